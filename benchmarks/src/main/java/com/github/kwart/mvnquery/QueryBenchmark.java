@@ -0,0 +1,66 @@
+package com.github.kwart.mvnquery;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Query building, search, hit decoding and result formatting over a synthetic index (the results are written to a null
+ * stream). Use {@code -p artifacts=10000000} to run on a larger index.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class QueryBenchmark {
+
+    @Param({ "10000", "1000000" })
+    public int artifacts;
+
+    @Param({ "groupIdPrefix", "lastDays", "packagingClassifier" })
+    public String filter;
+
+    private MvnQuery mvnQuery;
+    private List<RepositoryIndex> indexes;
+    private Config queryConfig;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        Config config = SyntheticIndex.config(SyntheticIndex.dataDir(artifacts)).build();
+        mvnQuery = new MvnQuery(config, SyntheticIndex.NULL_STREAM, SyntheticIndex.NULL_STREAM);
+        indexes = mvnQuery.prepareIndex();
+        queryConfig = switch (filter) {
+            case "groupIdPrefix" -> Config.builder().withGroupId("org.example1*").withPackaging("-").withLastDays(0).build();
+            case "lastDays" -> Config.builder().withLastDays(30).build();
+            case "packagingClassifier" -> Config.builder().withPackaging("jar").withClassifier("sources").withLastDays(0).build();
+            default -> throw new IllegalArgumentException("Unknown filter: " + filter);
+        };
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        mvnQuery.closeIndexes(indexes);
+    }
+
+    @Benchmark
+    public void query() throws IOException {
+        mvnQuery.query(indexes, queryConfig, OutputStream.nullOutputStream());
+    }
+}
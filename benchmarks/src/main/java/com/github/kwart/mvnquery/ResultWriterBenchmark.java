@@ -0,0 +1,93 @@
+package com.github.kwart.mvnquery;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.util.BytesRef;
+import org.apache.maven.index.ArtifactInfo;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Formatting of result rows, both from the DocValues bytes and from an {@link ArtifactInfo} (used for documents in an
+ * older index layout), with and without the lastModified timestamp, in every output format.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ResultWriterBenchmark {
+
+    private static final int ROWS = 1000;
+
+    /**
+     * Value of the {@code --timestamp-format} option, {@code none} prints no timestamp and {@code epoch} prints the
+     * timestamp in milliseconds.
+     */
+    @Param({ "none", "epoch", "iso", "yyyyMMddHHmmssSSS" })
+    public String timestampFormat;
+
+    /**
+     * Value of the {@code --format} option.
+     */
+    @Param({ "text", "ndjson", "csv", "columnar" })
+    public String format;
+
+    private ResultWriter writer;
+    private ArtifactInfo artifactInfo;
+    private BytesRef groupId;
+    private BytesRef artifactId;
+    private BytesRef version;
+    private BytesRef extension;
+    private BytesRef classifier;
+    private long lastModified;
+
+    @Setup
+    public void setup() {
+        Config.Builder config = Config.builder().withFormat(format).withUseTimestamp(!"none".equals(timestampFormat));
+        if (!"none".equals(timestampFormat) && !"epoch".equals(timestampFormat)) {
+            config.withTimestampFormat(timestampFormat);
+        }
+        writer = ResultWriter.create(OutputStream.nullOutputStream(), config.build());
+        lastModified = System.currentTimeMillis();
+        artifactInfo = new ArtifactInfo(SyntheticIndex.REPO_URL, "org.example42.project42", "artifact-842", "1.7.0", "sources",
+                "jar");
+        artifactInfo.setLastModified(lastModified);
+        groupId = new BytesRef(artifactInfo.getGroupId());
+        artifactId = new BytesRef(artifactInfo.getArtifactId());
+        version = new BytesRef(artifactInfo.getVersion());
+        extension = new BytesRef(artifactInfo.getFileExtension());
+        classifier = new BytesRef(artifactInfo.getClassifier());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void writeDocValues() throws IOException {
+        for (int i = 0; i < ROWS; i++) {
+            writer.write(null, groupId, artifactId, version, extension, classifier, lastModified);
+        }
+        writer.flush();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void writeArtifactInfo() throws IOException {
+        for (int i = 0; i < ROWS; i++) {
+            writer.write(null, artifactInfo);
+        }
+        writer.flush();
+    }
+}
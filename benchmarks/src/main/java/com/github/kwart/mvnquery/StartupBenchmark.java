@@ -0,0 +1,69 @@
+package com.github.kwart.mvnquery;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Wall-clock time of a cold {@code --skip-update} query run in a new JVM, i.e. including the JVM startup, class loading
+ * and opening the index. With {@code cds=auto} the JVM uses a dynamic AppCDS archive, which is created by the first
+ * (warmup) run.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 10)
+@Fork(1)
+public class StartupBenchmark {
+
+    @Param({ "10000" })
+    public int artifacts;
+
+    @Param({ "off", "auto" })
+    public String cds;
+
+    private List<String> command;
+
+    @Setup
+    public void setup() throws IOException {
+        Path dataDir = SyntheticIndex.dataDir(artifacts);
+        Path archive = Path.of("target", "startup-" + artifacts + ".jsa").toAbsolutePath();
+        Files.deleteIfExists(archive);
+        command = new ArrayList<>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        if ("auto".equals(cds)) {
+            command.add("-XX:+AutoCreateSharedArchive");
+            command.add("-XX:SharedArchiveFile=" + archive);
+        }
+        command.addAll(List.of("--enable-native-access=ALL-UNNAMED", "-cp", System.getProperty("java.class.path"),
+                MvnQuery.class.getName(), "--config-data-dir", dataDir.toString(), "--config-repo", SyntheticIndex.REPO_URL,
+                "--skip-update", "--quiet", "--groupId", "org.example1*", "--lastDays", "0"));
+    }
+
+    @Benchmark
+    public int coldQuery() throws Exception {
+        Process process = new ProcessBuilder(command).redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .redirectError(ProcessBuilder.Redirect.DISCARD).start();
+        int exitCode = process.waitFor();
+        if (exitCode != 0) {
+            throw new IllegalStateException("MvnQuery failed with exit code " + exitCode);
+        }
+        return exitCode;
+    }
+}
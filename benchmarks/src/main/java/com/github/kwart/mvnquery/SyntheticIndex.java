@@ -0,0 +1,140 @@
+package com.github.kwart.mvnquery;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.maven.index.ArtifactInfo;
+import org.apache.maven.index.IndexerField;
+import org.apache.maven.index.context.IndexCreator;
+import org.apache.maven.index.context.IndexingContext;
+
+/**
+ * Generates synthetic repository indexes with {@link CustomArtifactInfoIndexCreator}. The artifacts are deterministic:
+ * every GA has 10 versions and each version has a main jar plus the sources and javadoc jars, 20 GAs share a groupId and
+ * the lastModified timestamps are spread over the last year.
+ */
+final class SyntheticIndex {
+
+    static final String REPO_URL = "https://synthetic.example.com/maven2";
+    static final PrintStream NULL_STREAM = new PrintStream(OutputStream.nullOutputStream());
+
+    private static final String[] CLASSIFIERS = { null, "sources", "javadoc" };
+    private static final int VERSIONS_PER_GA = 10;
+    private static final int GAS_PER_GROUP = 20;
+    private static final String COMPLETE_MARKER = "synthetic.complete";
+
+    private static MvnIndexerContext indexerContext;
+
+    private SyntheticIndex() {
+    }
+
+    static synchronized MvnIndexerContext indexerContext() {
+        if (indexerContext == null) {
+            indexerContext = MvnIndexerContext.create();
+        }
+        return indexerContext;
+    }
+
+    /**
+     * Returns a MvnQuery data directory with an index of the given number of artifacts. The index is generated once into
+     * {@code target/synthetic-index/<artifacts>} and reused by later runs.
+     */
+    static Path dataDir(int artifacts) throws IOException {
+        Path dataDir = Path.of("target", "synthetic-index", Integer.toString(artifacts)).toAbsolutePath();
+        if (!Files.exists(dataDir.resolve(COMPLETE_MARKER))) {
+            deleteRecursively(dataDir);
+            IndexingContext context = createContext(dataDir.toFile(), REPO_URL);
+            try {
+                addArtifacts(context, 0, artifacts);
+            } finally {
+                indexerContext().indexer.closeIndexingContext(context, false);
+            }
+            Files.createFile(dataDir.resolve(COMPLETE_MARKER));
+        }
+        return dataDir;
+    }
+
+    /**
+     * Returns configuration for querying an index in the given data directory without updating it.
+     */
+    static Config.Builder config(Path dataDir) {
+        return Config.builder().withConfigDataDir(dataDir.toFile()).withConfigRepo(REPO_URL).withSkipUpdate(true)
+                .withQuiet(true);
+    }
+
+    /**
+     * Creates a writable indexing context laid out the same way as MvnQuery does it.
+     */
+    static IndexingContext createContext(File dataDir, String repoUrl) throws IOException {
+        String repoHash = MvnQuery.hashRepo(repoUrl);
+        File repoDir = new File(dataDir, repoHash);
+        List<IndexCreator> indexers = new ArrayList<>();
+        indexers.add(new CustomArtifactInfoIndexCreator());
+        return indexerContext().indexer.createIndexingContext(repoHash, repoHash, new File(repoDir, "cache"),
+                new File(repoDir, "index"), repoUrl, null, true, true, indexers);
+    }
+
+    /**
+     * Adds artifacts with numbers {@code from} (inclusive) to {@code to} (exclusive) to the context and commits it.
+     */
+    static void addArtifacts(IndexingContext context, int from, int to) throws IOException {
+        long now = System.currentTimeMillis();
+        IndexWriter writer = context.getIndexWriter();
+        for (int i = from; i < to; i++) {
+            int ga = i / (VERSIONS_PER_GA * CLASSIFIERS.length);
+            int group = ga / GAS_PER_GROUP;
+            String version = "1." + (i / CLASSIFIERS.length) % VERSIONS_PER_GA + ".0";
+            ArtifactInfo ai = new ArtifactInfo(REPO_URL, "org.example" + group % 100 + ".project" + group, "artifact-" + ga,
+                    version, CLASSIFIERS[i % CLASSIFIERS.length], "jar");
+            ai.setPackaging("jar");
+            ai.setLastModified(now - TimeUnit.MINUTES.toMillis(i % (365 * 24 * 60)));
+            // the same fields as DefaultIndexerEngine adds
+            Document doc = new Document();
+            doc.add(new Field(ArtifactInfo.UINFO, ai.getUinfo(), IndexerField.KEYWORD_STORED));
+            doc.add(new StoredField(ArtifactInfo.LAST_MODIFIED, Long.toString(now)));
+            for (IndexCreator creator : context.getIndexCreators()) {
+                creator.updateDocument(ai, doc);
+            }
+            writer.addDocument(doc);
+        }
+        context.updateTimestamp(true);
+        context.commit();
+    }
+
+    static void deleteRecursively(Path dir) throws IOException {
+        if (!Files.exists(dir)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    static void copyRecursively(Path source, Path target) throws IOException {
+        try (Stream<Path> paths = Files.walk(source)) {
+            for (Path path : (Iterable<Path>) paths::iterator) {
+                Path copy = target.resolve(source.relativize(path).toString());
+                if (Files.isDirectory(path)) {
+                    Files.createDirectories(copy);
+                } else {
+                    Files.copy(path, copy);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.github.kwart.mvnquery;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.maven.index.context.IndexingContext;
+import org.apache.maven.index.incremental.DefaultIncrementalHandler;
+import org.apache.maven.index.packer.DefaultIndexPacker;
+import org.apache.maven.index.packer.IndexPackingRequest;
+import org.apache.maven.index.packer.IndexPackingRequest.IndexFormat;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.sun.net.httpserver.HttpServer;
+import com.sun.net.httpserver.SimpleFileServer;
+
+/**
+ * Index updates served from a local file server. The remote index is published with one incremental chunk containing
+ * {@code increment} new artifacts. The incremental update applies the chunk to a fresh copy of the local index which was
+ * fully updated before the chunk was published, the full update builds the whole index in an empty directory with
+ * {@code indexThreads} threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class UpdateBenchmark {
+
+    @Param({ "100000" })
+    public int artifacts;
+
+    @Param({ "1000" })
+    public int increment;
+
+    @Param({ "1", "4" })
+    public int indexThreads;
+
+    private Path workDir;
+    private Path baseline;
+    private HttpServer server;
+    private String repoUrl;
+    private MvnQuery mvnQuery;
+    private Path dataDir;
+    private Path fullDataDir;
+    private MvnQuery fullUpdateQuery;
+
+    @Setup(Level.Trial)
+    public void setupTrial() throws Exception {
+        workDir = Files.createTempDirectory("mvnquery-update-benchmark");
+        Path remoteDir = workDir.resolve("remote");
+        Path indexDir = Files.createDirectories(remoteDir.resolve(".index"));
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", SimpleFileServer.createFileHandler(remoteDir));
+        server.start();
+        repoUrl = "http://localhost:" + server.getAddress().getPort();
+
+        IndexingContext source = SyntheticIndex.createContext(workDir.resolve("source").toFile(), repoUrl);
+        try {
+            SyntheticIndex.addArtifacts(source, 0, artifacts);
+            pack(source, indexDir);
+
+            baseline = workDir.resolve("baseline");
+            MvnQuery fullUpdate = new MvnQuery(config(baseline), SyntheticIndex.NULL_STREAM, SyntheticIndex.NULL_STREAM);
+            fullUpdate.closeIndexes(fullUpdate.prepareIndex());
+
+            // the incremental chunk only contains documents modified after the previous publication
+            Thread.sleep(10L);
+            SyntheticIndex.addArtifacts(source, artifacts, artifacts + increment);
+            pack(source, indexDir);
+        } finally {
+            SyntheticIndex.indexerContext().indexer.closeIndexingContext(source, false);
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void setupInvocation() throws Exception {
+        dataDir = workDir.resolve("local");
+        SyntheticIndex.deleteRecursively(dataDir);
+        SyntheticIndex.copyRecursively(baseline, dataDir);
+        mvnQuery = new MvnQuery(config(dataDir), SyntheticIndex.NULL_STREAM, SyntheticIndex.NULL_STREAM);
+        fullDataDir = workDir.resolve("full");
+        SyntheticIndex.deleteRecursively(fullDataDir);
+        fullUpdateQuery = new MvnQuery(config(fullDataDir), SyntheticIndex.NULL_STREAM, SyntheticIndex.NULL_STREAM);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDownTrial() throws IOException {
+        server.stop(0);
+        SyntheticIndex.deleteRecursively(workDir);
+    }
+
+    @Benchmark
+    public void incrementalUpdate() throws IOException {
+        List<RepositoryIndex> indexes = mvnQuery.prepareIndex();
+        mvnQuery.closeIndexes(indexes);
+    }
+
+    @Benchmark
+    public void fullUpdate() throws IOException {
+        List<RepositoryIndex> indexes = fullUpdateQuery.prepareIndex();
+        fullUpdateQuery.closeIndexes(indexes);
+    }
+
+    private Config config(Path dir) {
+        return Config.builder().withConfigDataDir(dir.toFile()).withConfigRepo(repoUrl).withForceUpdate(true)
+                .withIndexThreads(indexThreads).withQuiet(true).build();
+    }
+
+    private static void pack(IndexingContext context, Path targetDir) throws IOException {
+        IndexSearcher searcher = context.acquireIndexSearcher();
+        try {
+            IndexPackingRequest request = new IndexPackingRequest(context, searcher.getIndexReader(), targetDir.toFile());
+            request.setCreateIncrementalChunks(true);
+            request.setCreateChecksumFiles(true);
+            request.setFormats(List.of(IndexFormat.FORMAT_V1));
+            new DefaultIndexPacker(new DefaultIncrementalHandler()).packIndex(request);
+        } finally {
+            context.releaseIndexSearcher(searcher);
+        }
+    }
+}
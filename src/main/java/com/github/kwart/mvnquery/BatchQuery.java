@@ -0,0 +1,105 @@
+package com.github.kwart.mvnquery;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+import com.beust.jcommander.ParameterException;
+
+/**
+ * A query read from the {@code --batch} input. Each non-empty line (lines starting with {@code #} are comments) is either
+ * a list of query options (e.g. {@code --groupId org.example --classifier sources}) or a {@code groupId:artifactId}
+ * coordinate (further parts, such as a version, are ignored). The query options which are not on the line are taken
+ * from the command line. The query id is the line number.
+ */
+final class BatchQuery {
+
+    private final String id;
+    private final Config config;
+
+    private BatchQuery(String id, Config config) {
+        this.id = id;
+        this.config = config;
+    }
+
+    /**
+     * Reads the queries from the given reader.
+     *
+     * @throws ParameterException when a line doesn't describe a valid query
+     */
+    static List<BatchQuery> read(BufferedReader reader, Config defaults) throws IOException {
+        List<BatchQuery> queries = new ArrayList<>();
+        int lineNumber = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            line = line.strip();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            List<String> args;
+            if (line.startsWith("-")) {
+                args = Arrays.asList(line.split("\\s+"));
+            } else {
+                String[] coordinates = line.split(":");
+                if (coordinates.length < 2 || coordinates[0].isEmpty() || coordinates[1].isEmpty()) {
+                    throw new ParameterException("Invalid batch query on line " + lineNumber + ": " + line);
+                }
+                args = List.of("--groupId", coordinates[0], "--artifactId", coordinates[1]);
+            }
+            Config config;
+            try {
+                config = Config.parseQueryArgs(args, defaults);
+                MvnQuery.validateQuery(config);
+            } catch (ParameterException | IllegalArgumentException e) {
+                throw new ParameterException("Invalid batch query on line " + lineNumber + ": " + e.getMessage());
+            }
+            // the results of all the queries are written by one writer configured by the command line
+            if (config.isUseTimestamp() != defaults.isUseTimestamp()
+                    || !Objects.equals(config.getTimestampFormat(), defaults.getTimestampFormat())
+                    || config.getFlushInterval() != defaults.getFlushInterval() || config.isDedup() != defaults.isDedup()
+                    || !Objects.equals(config.getFormat(), defaults.getFormat())) {
+                throw new ParameterException("Invalid batch query on line " + lineNumber
+                        + ": the output options can only be used on the command line");
+            }
+            if (SummaryCollector.isSummary(config)) {
+                throw new ParameterException(
+                        "Invalid batch query on line " + lineNumber + ": --count and --facet can't be used in a batch");
+            }
+            queries.add(new BatchQuery(Integer.toString(lineNumber), config));
+        }
+        return queries;
+    }
+
+    String getId() {
+        return id;
+    }
+
+    Config getConfig() {
+        return config;
+    }
+
+    /**
+     * Returns {@code true} for a lookup of an exact groupId:artifactId without a sort order, limit or class filter. Such
+     * lookups can be merged with other lookups using the same filters into a single query.
+     */
+    boolean isGaLookup() {
+        return isExact(config.getGroupId()) && isExact(config.getArtifactId()) && config.getSort() == null
+                && config.getLimit() == 0 && !config.isLatest() && config.getClassName() == null;
+    }
+
+    /**
+     * Returns the filters of the query other than groupId and artifactId. Lookups with equal filters can be merged.
+     */
+    List<Object> getOtherFilters() {
+        return Arrays.asList(config.getArtifactVersion(), config.getVersionRange(), config.getPackaging(),
+                config.getClassifier(), config.getLastDays());
+    }
+
+    private static boolean isExact(String value) {
+        return value != null && !value.isEmpty() && !"-".equals(value) && !FilterPattern.isPattern(value);
+    }
+}
@@ -0,0 +1,223 @@
+package com.github.kwart.mvnquery;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.StoredFields;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+import org.apache.maven.index.ArtifactInfo;
+import org.apache.maven.index.context.IndexingContext;
+import org.apache.maven.index.updater.IndexUpdateSideEffect;
+
+/**
+ * Journal of the artifacts added by the incremental index updates, which backs the changes feed ({@code --changes}). It's
+ * registered as an {@link IndexUpdateSideEffect}, so it gets the documents of every applied index chunk, and it stores
+ * their UINFO values to the {@code changes/<sequence>.txt} file in the repository directory.
+ * <p>
+ * The applied chunks are numbered by the {@code changes.sequence} property in {@code index.properties} and every feed
+ * consumer has its checkpoint (the last sequence it has seen) stored there as {@code changes.checkpoint.<consumer>}. The
+ * chunks are only recorded while a consumer exists and the journal files which were seen by all the consumers are
+ * removed. A full index update can't be recorded, the sequence at which it happened is kept as {@code changes.base}.
+ */
+class ChangesJournal implements IndexUpdateSideEffect {
+
+    static final String PROP_SEQUENCE = "changes.sequence";
+    static final String PROP_BASE = "changes.base";
+    static final String PROP_CHECKPOINT_PREFIX = "changes.checkpoint.";
+
+    private static final Pattern CONSUMER_PATTERN = Pattern.compile("[A-Za-z0-9._-]+");
+    private static final String DIRNAME_CHANGES = "changes";
+    private static final String SUFFIX = ".txt";
+    private static final Set<String> FIELDS = Set.of(ArtifactInfo.UINFO);
+
+    private final Map<IndexingContext, Recording> recordings = new ConcurrentHashMap<>();
+
+    /**
+     * Starts recording the chunks applied to the given context. It has to be called under the update lock of the
+     * repository with the properties loaded from its {@code index.properties}.
+     */
+    void begin(IndexingContext indexingContext, File repoDir, Properties props) throws IOException {
+        long sequence = getSequence(props);
+        long minCheckpoint = Long.MAX_VALUE;
+        boolean hasConsumers = false;
+        for (String name : props.stringPropertyNames()) {
+            if (name.startsWith(PROP_CHECKPOINT_PREFIX)) {
+                hasConsumers = true;
+                minCheckpoint = Math.min(minCheckpoint, getLong(props, name));
+            }
+        }
+        // remove the chunks seen by all the consumers and the leftovers of failed updates
+        Path changesDir = repoDir.toPath().resolve(DIRNAME_CHANGES);
+        if (Files.isDirectory(changesDir)) {
+            try (Stream<Path> files = Files.list(changesDir)) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    long fileSequence = parseSequence(file);
+                    if (fileSequence <= minCheckpoint || fileSequence > sequence) {
+                        Files.delete(file);
+                    }
+                }
+            }
+        }
+        recordings.put(indexingContext, new Recording(changesDir, sequence, hasConsumers));
+    }
+
+    /**
+     * Stores the sequence of the last recorded chunk to the given properties and stops the recording.
+     */
+    void commit(IndexingContext indexingContext, Properties props) {
+        Recording recording = recordings.remove(indexingContext);
+        if (recording == null) {
+            return;
+        }
+        props.setProperty(PROP_SEQUENCE, Long.toString(recording.sequence));
+        if (recording.fullUpdate) {
+            props.setProperty(PROP_BASE, Long.toString(recording.sequence));
+        }
+    }
+
+    /**
+     * Stops the recording without changing the sequence (e.g. when the update failed). The recorded files are removed by
+     * the next {@link #begin(IndexingContext, File, Properties)}.
+     */
+    void discard(IndexingContext indexingContext) {
+        recordings.remove(indexingContext);
+    }
+
+    @Override
+    public void updateIndex(Directory directory, IndexingContext context, boolean partial) {
+        Recording recording = recordings.get(context);
+        if (recording == null) {
+            return;
+        }
+        if (!partial) {
+            recording.fullUpdate = true;
+            return;
+        }
+        if (!recording.enabled) {
+            return;
+        }
+        recording.sequence++;
+        try {
+            Files.createDirectories(recording.changesDir);
+            try (DirectoryReader reader = DirectoryReader.open(directory);
+                    BufferedWriter writer = Files.newBufferedWriter(journalFile(recording.changesDir, recording.sequence))) {
+                for (LeafReaderContext leaf : reader.leaves()) {
+                    LeafReader leafReader = leaf.reader();
+                    StoredFields storedFields = leafReader.storedFields();
+                    Bits liveDocs = leafReader.getLiveDocs();
+                    for (int doc = 0; doc < leafReader.maxDoc(); doc++) {
+                        if (liveDocs != null && !liveDocs.get(doc)) {
+                            continue;
+                        }
+                        // descriptor, groups and deletion documents have no UINFO
+                        String uinfo = storedFields.document(doc, FIELDS).get(ArtifactInfo.UINFO);
+                        if (uinfo != null) {
+                            writer.write(uinfo);
+                            writer.newLine();
+                        }
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Recording of the index changes failed", e);
+        }
+    }
+
+    /**
+     * Returns the UINFO values of the artifacts recorded after the {@code from} sequence up to the {@code to} sequence
+     * (inclusive).
+     */
+    static Set<BytesRef> read(File repoDir, long from, long to) throws IOException {
+        Path changesDir = repoDir.toPath().resolve(DIRNAME_CHANGES);
+        Set<BytesRef> uinfos = new HashSet<>();
+        for (long sequence = from + 1; sequence <= to; sequence++) {
+            Path file = journalFile(changesDir, sequence);
+            if (!Files.exists(file)) {
+                // nothing was recorded while there was no consumer
+                continue;
+            }
+            try (BufferedReader reader = Files.newBufferedReader(file, UTF_8)) {
+                for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                    uinfos.add(new BytesRef(line));
+                }
+            }
+        }
+        return uinfos;
+    }
+
+    /**
+     * Returns the name of the property holding the checkpoint of the given consumer.
+     *
+     * @throws IllegalArgumentException when the consumer name is not valid
+     */
+    static String checkpointProperty(String consumer) {
+        if (!CONSUMER_PATTERN.matcher(consumer).matches()) {
+            throw new IllegalArgumentException(
+                    "Invalid changes consumer name: " + consumer + " (use letters, digits, '.', '_' or '-')");
+        }
+        return PROP_CHECKPOINT_PREFIX + consumer;
+    }
+
+    static long getSequence(Properties props) {
+        return getLong(props, PROP_SEQUENCE);
+    }
+
+    static long getBase(Properties props) {
+        return getLong(props, PROP_BASE);
+    }
+
+    static long getLong(Properties props, String name) {
+        try {
+            return Long.parseLong(props.getProperty(name, "0"));
+        } catch (NumberFormatException e) {
+            return 0L;
+        }
+    }
+
+    private static Path journalFile(Path changesDir, long sequence) {
+        return changesDir.resolve(sequence + SUFFIX);
+    }
+
+    private static long parseSequence(Path file) {
+        String name = file.getFileName().toString();
+        try {
+            return Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+        } catch (NumberFormatException | IndexOutOfBoundsException e) {
+            // not a journal file, remove it
+            return -1L;
+        }
+    }
+
+    private static final class Recording {
+
+        private final Path changesDir;
+        private final boolean enabled;
+        private long sequence;
+        private boolean fullUpdate;
+
+        private Recording(Path changesDir, long sequence, boolean enabled) {
+            this.changesDir = changesDir;
+            this.sequence = sequence;
+            this.enabled = enabled;
+        }
+    }
+}
@@ -0,0 +1,382 @@
+package com.github.kwart.mvnquery;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.SortedDocValuesField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.MultiTerms;
+import org.apache.lucene.index.SortedDocValues;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.PrefixQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.SimpleCollector;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.BytesRef;
+import org.apache.maven.index.ArtifactInfo;
+import org.apache.maven.index.IndexerField;
+import org.apache.maven.index.context.IndexCreator;
+import org.apache.maven.index.context.IndexingContext;
+
+/**
+ * Index of the Java classes contained in the artifacts (opt-in by {@code --class-index}), which backs the {@code --class}
+ * queries. The class names come from the classnames field of the published index records, which the main index doesn't
+ * keep. They are stored in a separate Lucene index in the {@code classes} directory next to the main index, one document
+ * per artifact with only the indexed name terms and the UINFO column, so enabling it doesn't grow the main index or slow
+ * down the other queries. The terms dictionary of the class index is a sorted, prefix-compressed block table indexed by
+ * an FST and it's read through memory mapped files.
+ * <p>
+ * The {@link #creator(IngestFilter)} registered in the indexing context reads the class names of the published records
+ * and adds them to a staging index when the update writes the artifact documents. A full update replaces the class
+ * index by the staging one, the staging index of an incremental update is merged into it. Entries of the artifacts
+ * deleted from the main index are left in place, the class queries always select the artifacts from the main index.
+ */
+final class ClassIndex {
+
+    static final String FLD_UINFO = "u";
+    static final String DV_UINFO = "dv_u";
+    // fully qualified names, e.g. org.foo.Bar or org.foo.Bar$Inner
+    static final String FLD_CLASS_NAME = "cn";
+    // names without the package, e.g. Bar or Bar$Inner
+    static final String FLD_SIMPLE_NAME = "sn";
+    // the matched artifacts are selected from the main index by a set of UINFO terms, so their number is limited
+    static final int MAX_MATCHES = 100_000;
+
+    // stored field of the published index records with the "/org/foo/Bar" names separated by the new line characters
+    private static final String FLD_CLASSNAMES = "c";
+    private static final String SUFFIX_STAGING = ".staging";
+
+    private final Path dir;
+    private final Path stagingDir;
+    private Directory stagingDirectory;
+    private volatile IndexWriter staging;
+
+    /**
+     * @param indexDir the main index directory
+     */
+    ClassIndex(File indexDir) {
+        this.dir = dir(indexDir);
+        this.stagingDir = dir.resolveSibling(dir.getFileName() + SUFFIX_STAGING);
+    }
+
+    /**
+     * Returns the class index directory belonging to the given main index directory, e.g. {@code classes} for
+     * {@code index} and {@code classes-2} for {@code index-2}.
+     */
+    static Path dir(File indexDir) {
+        return indexDir.toPath().resolveSibling(indexDir.getName().replaceFirst("^index", "classes"));
+    }
+
+    /**
+     * Returns the index creator which collects the class names of the updated artifacts into the staging index.
+     *
+     * @param ingestFilter the groupIds to index, or {@code null} to index all the artifacts
+     */
+    IndexCreator creator(IngestFilter ingestFilter) {
+        return new Creator(ingestFilter);
+    }
+
+    /**
+     * Returns the class index collecting the updates of the given indexing context, or {@code null} when the class index
+     * is not enabled for it.
+     */
+    static ClassIndex of(IndexingContext indexingContext) {
+        for (IndexCreator indexCreator : indexingContext.getIndexCreators()) {
+            if (indexCreator instanceof Creator creator) {
+                return creator.getClassIndex();
+            }
+        }
+        return null;
+    }
+
+    boolean exists() {
+        return Files.isDirectory(dir);
+    }
+
+    /**
+     * Opens an empty staging index for the records of an index update.
+     */
+    void begin() throws IOException {
+        MvnQuery.deleteRecursively(stagingDir);
+        stagingDirectory = FSDirectory.open(stagingDir);
+        staging = new IndexWriter(stagingDirectory, new IndexWriterConfig().setOpenMode(IndexWriterConfig.OpenMode.CREATE));
+    }
+
+    /**
+     * Applies the staging index, it replaces the class index after a full update and it's merged into it otherwise.
+     */
+    void commit(boolean fullUpdate) throws IOException {
+        IndexWriter writer = staging;
+        staging = null;
+        int stagedDocs;
+        try (Directory directory = stagingDirectory; writer) {
+            writer.commit();
+            stagedDocs = writer.getDocStats().numDocs;
+        }
+        if (fullUpdate) {
+            MvnQuery.deleteRecursively(dir);
+            Files.move(stagingDir, dir, StandardCopyOption.ATOMIC_MOVE);
+            return;
+        }
+        if (stagedDocs > 0 && exists()) {
+            try (Directory updates = FSDirectory.open(stagingDir)) {
+                merge(updates);
+            }
+        }
+        MvnQuery.deleteRecursively(stagingDir);
+    }
+
+    /**
+     * Drops the staging index, e.g. when the update failed.
+     */
+    void discard() throws IOException {
+        IndexWriter writer = staging;
+        staging = null;
+        if (writer != null) {
+            writer.rollback();
+            stagingDirectory.close();
+        }
+        MvnQuery.deleteRecursively(stagingDir);
+    }
+
+    private void merge(Directory updates) throws IOException {
+        try (DirectoryReader reader = DirectoryReader.open(updates);
+                Directory directory = FSDirectory.open(dir);
+                IndexWriter writer = new IndexWriter(directory,
+                        new IndexWriterConfig().setOpenMode(IndexWriterConfig.OpenMode.APPEND))) {
+            // the updated artifacts replace their previous entries
+            Terms terms = MultiTerms.getTerms(reader, FLD_UINFO);
+            if (terms != null) {
+                TermsEnum termsEnum = terms.iterator();
+                for (BytesRef uinfo = termsEnum.next(); uinfo != null; uinfo = termsEnum.next()) {
+                    writer.deleteDocuments(new Term(FLD_UINFO, BytesRef.deepCopyOf(uinfo)));
+                }
+            }
+            writer.addIndexes(updates);
+            writer.commit();
+        }
+    }
+
+    /**
+     * Opens the class index belonging to the given main index directory read-only, or returns {@code null} when it
+     * doesn't exist.
+     */
+    static Searcher openSearcher(File indexDir) throws IOException {
+        Path dir = dir(indexDir);
+        if (!Files.isDirectory(dir)) {
+            return null;
+        }
+        Directory directory = FSDirectory.open(dir);
+        try {
+            return new Searcher(directory, DirectoryReader.open(directory));
+        } catch (IOException | RuntimeException e) {
+            directory.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the query matching the given class name:
+     * <ul>
+     * <li>{@code org.foo.*} - classes in the package and its subpackages,</li>
+     * <li>{@code org.foo.Bar} - the fully qualified class name,</li>
+     * <li>{@code Bar} - the simple class name in any package.</li>
+     * </ul>
+     *
+     * @throws IllegalArgumentException when the name is not valid
+     */
+    static Query toQuery(String className) {
+        String name = className.trim().replace('/', '.');
+        if (name.endsWith(".*") && name.length() > 2) {
+            return new PrefixQuery(new Term(FLD_CLASS_NAME, name.substring(0, name.length() - 1)));
+        }
+        if (name.isEmpty() || name.startsWith(".") || name.endsWith(".") || FilterPattern.isPattern(name)) {
+            throw new IllegalArgumentException(
+                    "Invalid class name: " + className + " (use a class name, a simple class name or package.*)");
+        }
+        return new TermQuery(new Term(name.indexOf('.') >= 0 ? FLD_CLASS_NAME : FLD_SIMPLE_NAME, name));
+    }
+
+    /**
+     * Adds the classes of the given artifact to the staging index.
+     */
+    private static void add(IndexWriter writer, String uinfo, String classNames) throws IOException {
+        List<String> names = parseClassNames(classNames);
+        if (names.isEmpty()) {
+            return;
+        }
+        Document doc = new Document();
+        doc.add(new StringField(FLD_UINFO, uinfo, Field.Store.NO));
+        doc.add(new SortedDocValuesField(DV_UINFO, new BytesRef(uinfo)));
+        Set<String> simpleNames = new HashSet<>();
+        for (String name : names) {
+            doc.add(new StringField(FLD_CLASS_NAME, name, Field.Store.NO));
+            String simpleName = name.substring(name.lastIndexOf('.') + 1);
+            if (simpleNames.add(simpleName)) {
+                doc.add(new StringField(FLD_SIMPLE_NAME, simpleName, Field.Store.NO));
+            }
+        }
+        writer.updateDocument(new Term(FLD_UINFO, uinfo), doc);
+    }
+
+    /**
+     * Parses the class names of a published index record ({@code /org/foo/Bar} lines) to the dotted form. The anonymous
+     * classes (e.g. {@code Bar$1}) are skipped, nobody searches for them.
+     */
+    static List<String> parseClassNames(String classNames) {
+        List<String> names = new ArrayList<>();
+        for (String line : classNames.split("\n")) {
+            String name = line.trim();
+            if (name.startsWith("/")) {
+                name = name.substring(1);
+            }
+            if (name.isEmpty() || isAnonymous(name)) {
+                continue;
+            }
+            names.add(name.replace('/', '.'));
+        }
+        return names;
+    }
+
+    private static boolean isAnonymous(String name) {
+        for (int i = name.indexOf('$'); i >= 0; i = name.indexOf('$', i + 1)) {
+            if (i + 1 < name.length() && Character.isDigit(name.charAt(i + 1))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Opened class index, see {@link RepositoryIndex#getClassIndexSearcher()}.
+     */
+    static final class Searcher implements Closeable {
+
+        private final Directory directory;
+        private final DirectoryReader reader;
+        private final IndexSearcher searcher;
+
+        private Searcher(Directory directory, DirectoryReader reader) {
+            this.directory = directory;
+            this.reader = reader;
+            this.searcher = new IndexSearcher(reader);
+        }
+
+        /**
+         * Adds the UINFO values of the artifacts containing the classes matching the given name (see
+         * {@link ClassIndex#toQuery(String)}) to the given set.
+         *
+         * @throws IllegalArgumentException when the set grows over {@link ClassIndex#MAX_MATCHES} values
+         */
+        void lookup(String className, Set<BytesRef> uinfos) throws IOException {
+            searcher.search(toQuery(className), new SimpleCollector() {
+
+                private SortedDocValues values;
+
+                @Override
+                protected void doSetNextReader(LeafReaderContext context) throws IOException {
+                    values = DocValues.getSorted(context.reader(), DV_UINFO);
+                }
+
+                @Override
+                public void collect(int doc) throws IOException {
+                    if (!values.advanceExact(doc)) {
+                        return;
+                    }
+                    BytesRef uinfo = values.lookupOrd(values.ordValue());
+                    if (!uinfos.contains(uinfo)) {
+                        if (uinfos.size() >= MAX_MATCHES) {
+                            throw new IllegalArgumentException("The class " + className + " is contained in more than "
+                                    + MAX_MATCHES + " artifacts, use a more specific name");
+                        }
+                        uinfos.add(BytesRef.deepCopyOf(uinfo));
+                    }
+                }
+
+                @Override
+                public ScoreMode scoreMode() {
+                    return ScoreMode.COMPLETE_NO_SCORES;
+                }
+            });
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                reader.close();
+            } finally {
+                directory.close();
+            }
+        }
+    }
+
+    private final class Creator implements IndexCreator {
+
+        private final IngestFilter ingestFilter;
+
+        Creator(IngestFilter ingestFilter) {
+            this.ingestFilter = ingestFilter;
+        }
+
+        ClassIndex getClassIndex() {
+            return ClassIndex.this;
+        }
+
+        @Override
+        public void updateDocument(ArtifactInfo ai, Document doc) {
+            // nothing is added to the main index, the documents written outside of an index update are skipped
+            IndexWriter writer = staging;
+            if (writer != null && ai.getClassNames() != null
+                    && (ingestFilter == null || ingestFilter.acceptGroupId(ai.getGroupId()))) {
+                try {
+                    add(writer, ai.getUinfo(), ai.getClassNames());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+
+        @Override
+        public boolean updateArtifactInfo(Document doc, ArtifactInfo ai) {
+            // only the published records have the class names, the documents of the main index don't
+            String classNames = doc.get(FLD_CLASSNAMES);
+            if (classNames != null) {
+                ai.setClassNames(classNames);
+            }
+            return false;
+        }
+
+        @Override
+        public Collection<IndexerField> getIndexerFields() {
+            return List.of();
+        }
+
+        @Override
+        public String getId() {
+            return "mvnquery-classes";
+        }
+    }
+}
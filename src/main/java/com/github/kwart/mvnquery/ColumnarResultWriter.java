@@ -0,0 +1,118 @@
+package com.github.kwart.mvnquery;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefBuilder;
+
+/**
+ * Compact binary columnar format. The rows are collected into batches of up to {@link #BATCH_SIZE} rows and every batch
+ * stores each column as one contiguous block, so a consumer can load a single column without parsing the others. All
+ * numbers are big-endian.
+ *
+ * <pre>
+ * header: "MVNQCOL1", int32 columnCount, columnCount * (int8 type, int32 nameLength, UTF-8 name)
+ * batch:  int32 rowCount, then for every column in the header order:
+ *         string column (type 1): rowCount * int32 length (-1 for null), followed by the concatenated UTF-8 values
+ *         int64 column (type 2):  rowCount * int64 value
+ * </pre>
+ *
+ * The columns are {@code tag}, {@code groupId}, {@code artifactId}, {@code version}, {@code extension},
+ * {@code classifier} (strings) and {@code lastModified} (int64 milliseconds, 0 when timestamps are not enabled). The
+ * batches follow the header until the end of the stream.
+ */
+class ColumnarResultWriter extends ResultWriter {
+
+    static final int BATCH_SIZE = 8192;
+
+    private static final byte[] MAGIC = "MVNQCOL1".getBytes(US_ASCII);
+    private static final byte TYPE_STRING = 1;
+    private static final byte TYPE_INT64 = 2;
+    private static final String[] STRING_COLUMNS = { "tag", "groupId", "artifactId", "version", "extension",
+            "classifier" };
+    private static final String LAST_MODIFIED_COLUMN = "lastModified";
+
+    private final BytesRefBuilder[] values = new BytesRefBuilder[STRING_COLUMNS.length];
+    private final int[][] lengths = new int[STRING_COLUMNS.length][BATCH_SIZE];
+    private final long[] lastModifiedValues = new long[BATCH_SIZE];
+
+    private boolean headerWritten;
+    private int batchRows;
+
+    ColumnarResultWriter(OutputStream out, Config queryConfig) {
+        super(out, queryConfig);
+        for (int i = 0; i < values.length; i++) {
+            values[i] = new BytesRefBuilder();
+        }
+    }
+
+    @Override
+    protected void writeRow(BytesRef tag, BytesRef groupId, BytesRef artifactId, BytesRef version, BytesRef extension,
+            BytesRef classifier, long lastModified) throws IOException {
+        add(0, tag);
+        add(1, groupId);
+        add(2, artifactId);
+        add(3, version);
+        add(4, extension);
+        add(5, classifier);
+        lastModifiedValues[batchRows] = isUseTimestamp() ? lastModified : 0L;
+        if (++batchRows == BATCH_SIZE) {
+            writeBatch();
+        }
+    }
+
+    @Override
+    protected void beforeFlush() throws IOException {
+        writeBatch();
+    }
+
+    private void add(int column, BytesRef value) {
+        if (value == null) {
+            lengths[column][batchRows] = -1;
+        } else {
+            lengths[column][batchRows] = value.length;
+            values[column].append(value);
+        }
+    }
+
+    private void writeBatch() throws IOException {
+        if (!headerWritten) {
+            writeHeader();
+        }
+        if (batchRows == 0) {
+            return;
+        }
+        putInt(batchRows);
+        for (int column = 0; column < STRING_COLUMNS.length; column++) {
+            for (int row = 0; row < batchRows; row++) {
+                putInt(lengths[column][row]);
+            }
+            BytesRefBuilder columnValues = values[column];
+            put(columnValues.bytes(), 0, columnValues.length());
+            columnValues.clear();
+        }
+        for (int row = 0; row < batchRows; row++) {
+            putLong(lastModifiedValues[row]);
+        }
+        batchRows = 0;
+    }
+
+    private void writeHeader() throws IOException {
+        headerWritten = true;
+        put(MAGIC, 0, MAGIC.length);
+        putInt(STRING_COLUMNS.length + 1);
+        for (String name : STRING_COLUMNS) {
+            putColumn(TYPE_STRING, name);
+        }
+        putColumn(TYPE_INT64, LAST_MODIFIED_COLUMN);
+    }
+
+    private void putColumn(byte type, String name) throws IOException {
+        put((char) type);
+        putInt(name.length());
+        putText(name);
+    }
+}
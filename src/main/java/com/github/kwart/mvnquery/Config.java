@@ -1,13 +1,27 @@
 package com.github.kwart.mvnquery;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Objects;
+import java.util.Set;
 
+import com.beust.jcommander.JCommander;
 import com.beust.jcommander.Parameter;
+import com.beust.jcommander.ParameterDescription;
+import com.beust.jcommander.ParameterException;
 import com.beust.jcommander.converters.FileConverter;
 
 public class Config {
 
+    /**
+     * Long names of the options which can be used to describe a single query (e.g. in a query server request).
+     */
+    static final Set<String> QUERY_OPTIONS = Set.of("--groupId", "--artifactId", "--packaging", "--classifier", "--lastDays",
+            "--use-timestamp", "--timestamp-format", "--flush-interval", "--dedup", "--sort", "--limit", "--latest",
+            "--format", "--artifact-version", "--version-range", "--count", "--facet", "--class");
+
     @Parameter(names = { "--help", "-h" }, help = true, description = "Prints this help")
     private boolean printHelp;
 
@@ -17,26 +31,36 @@ public class Config {
     @Parameter(names = { "--version", "-v" }, description = "Print version")
     private boolean printVersion;
 
-    @Parameter(names = { "--groupId", "-g" }, description = "Filter by groupId")
+    @Parameter(names = { "--groupId", "-g" }, description = "Filter by groupId (exact value, prefix*, *suffix, wild*card or /regex/)")
     private String groupId;
 
-    @Parameter(names = { "--artifactId", "-a" }, description = "Filter by artifactId")
+    @Parameter(names = { "--artifactId", "-a" }, description = "Filter by artifactId (exact value, prefix*, *suffix, wild*card or /regex/)")
     private String artifactId;
 
+    @Parameter(names = { "--artifact-version", "-V" }, description = "Filter by version (exact value, prefix*, wild*card or /regex/)")
+    private String artifactVersion;
+
+    @Parameter(names = { "--version-range", "-r" }, description = "Filter by Maven version range, e.g. [1.0,2.0) or (,1.5],[2.0,)")
+    private String versionRange;
+
     @Parameter(names = { "--packaging", "-p" }, description = "Filter by packaging type")
     private String packaging;
 
-    @Parameter(names = { "--classifier", "-c" }, description = "Filter by classifier")
+    @Parameter(names = { "--classifier", "-c" }, description = "Filter by classifier (exact value, prefix*, wild*card or /regex/)")
     private String classifier;
 
-    @Parameter(names = { "--lastDays", "-d" }, description = "Filter artifacts modified in last X days")
+    @Parameter(names = "--class", description = "Filter by a contained Java class: fully qualified name, simple name or package.* (needs the class index, see --class-index)")
+    private String className;
+
+    @Parameter(names = { "--lastDays", "-d" }, description = "Filter artifacts modified in last X days (the window starts at a full hour)")
     private int lastDays;
 
     @Parameter(names = { "--config-data-dir" }, converter = FileConverter.class, description = "Set data directory for index")
     private File configDataDir;
 
-    @Parameter(names = { "--config-repo" }, description = "Set repository URL")
-    private String configRepo;
+    @Parameter(names = {
+            "--config-repo" }, description = "Set repository URL (repeat the option or use a comma separated list to query more repositories)")
+    private List<String> configRepos;
 
     @Parameter(names = { "--use-timestamp", "-t" }, description = "Include the lastModified field in query results")
     private boolean useTimestamp;
@@ -45,12 +69,79 @@ public class Config {
             "--timestamp-format" }, description = "User defined format to print the lastModifiedTime ('iso', 'yyyyMMddHHmmssSSS', etc.) ")
     private String timestampFormat;
 
+    @Parameter(names = "--flush-interval", description = "Flush the result output after every N rows (0 flushes only at the end)")
+    private int flushInterval;
+
+    @Parameter(names = "--sort", description = "Sort the results: lastModified (newest first), ga (by groupId and artifactId, "
+            + "newest version first) or version (highest version first)")
+    private String sort;
+
+    @Parameter(names = "--limit", description = "Print at most N results (0 for no limit)")
+    private int limit;
+
+    @Parameter(names = "--latest", description = "Print only the highest version of each groupId:artifactId")
+    private boolean latest;
+
+    @Parameter(names = "--dedup", description = "Print artifacts found in more repositories only once")
+    private boolean dedup;
+
     @Parameter(names = "--skip-update", description = "Skip index update even if interval has passed")
     private boolean skipUpdate;
 
     @Parameter(names = "--force-update", description = "Force index update even if interval hasn't passed")
     private boolean forceUpdate;
 
+    @Parameter(names = "--fetch-threads", description = "Maximal number of concurrent downloads during the index update")
+    private int fetchThreads;
+
+    @Parameter(names = "--index-threads", description = "Number of threads building the index documents during the index update")
+    private int indexThreads;
+
+    @Parameter(names = "--force-merge", description = "Merge the index into a single segment after a full index update")
+    private boolean forceMerge;
+
+    @Parameter(names = "--class-index", description = "Index the Java class names of the artifacts for the --class queries, the class index is then kept up to date by the next updates of the repository index")
+    private boolean classIndex;
+
+    @Parameter(names = "--ingest-groups", description = "Index only the artifacts of the given comma separated groupIds and their subgroups (prefix* for any groupId starting with the prefix, * for all), the setting is stored for the repository and its change triggers a full index update")
+    private String ingestGroups;
+
+    @Parameter(names = "--server-port", description = "Keep the index open and serve queries over HTTP on the given localhost port (0 to disable)")
+    private int serverPort;
+
+    @Parameter(names = "--metrics", description = "Print timing metrics in the given format (json or prometheus) when finished")
+    private String metrics;
+
+    @Parameter(names = "--read-only", description = "Open the index read-only without locking it and skip the index update, so more processes can query the same data directory")
+    private boolean readOnly;
+
+    @Parameter(names = "--refresh", description = "Update the index in a staging directory and publish it atomically instead of running a query, running queries keep using the previous index")
+    private boolean refresh;
+
+    @Parameter(names = "--batch", description = "Run the queries listed in the given file (- for the standard input), one per line as query options or groupId:artifactId")
+    private String batch;
+
+    @Parameter(names = "--format", description = "Output format of the results: text, ndjson, csv or columnar (binary)")
+    private String format;
+
+    @Parameter(names = "--count", description = "Print only the number of matching artifacts")
+    private boolean count;
+
+    @Parameter(names = "--facet", description = "Print the number of matching artifacts per value of the given field: extension, classifier, groupId or artifactId")
+    private String facet;
+
+    @Parameter(names = "--distinct", description = "List the distinct groupIds (groupId) or groupId:artifactId pairs (artifactId) matching the exact or prefix* groupId and artifactId filters (the other filters can't be used)")
+    private String distinct;
+
+    @Parameter(names = "--identify", description = "Print the coordinates of the artifacts matching the SHA-1 checksums of the jar, war and ear files in the given directory, or of the files listed in the given file (- for the standard input)")
+    private String identify;
+
+    @Parameter(names = "--changes", description = "Print the artifacts added by the incremental index updates since the previous run with the given consumer name (the first run only stores the checkpoint)")
+    private String changes;
+
+    @Parameter(names = "--cache-size", description = "Size limit of the on-disk query result cache in MB (0 disables the cache)")
+    private int cacheSize;
+
     public Config() {
         this(builder());
     }
@@ -65,11 +156,85 @@ public class Config {
         this.classifier = builder.classifier;
         this.lastDays = builder.lastDays;
         this.configDataDir = builder.configDataDir;
-        this.configRepo = builder.configRepo;
+        this.configRepos = new ArrayList<>(builder.configRepos);
         this.useTimestamp = builder.useTimestamp;
         this.timestampFormat = builder.timestampFormat;
+        this.flushInterval = builder.flushInterval;
+        this.dedup = builder.dedup;
+        this.sort = builder.sort;
+        this.limit = builder.limit;
+        this.latest = builder.latest;
         this.skipUpdate = builder.skipUpdate;
         this.forceUpdate = builder.forceUpdate;
+        this.fetchThreads = builder.fetchThreads;
+        this.serverPort = builder.serverPort;
+        this.metrics = builder.metrics;
+        this.readOnly = builder.readOnly;
+        this.refresh = builder.refresh;
+        this.batch = builder.batch;
+        this.format = builder.format;
+        this.changes = builder.changes;
+        this.cacheSize = builder.cacheSize;
+        this.artifactVersion = builder.artifactVersion;
+        this.versionRange = builder.versionRange;
+        this.indexThreads = builder.indexThreads;
+        this.forceMerge = builder.forceMerge;
+        this.count = builder.count;
+        this.facet = builder.facet;
+        this.distinct = builder.distinct;
+        this.identify = builder.identify;
+        this.classIndex = builder.classIndex;
+        this.className = builder.className;
+        this.ingestGroups = builder.ingestGroups;
+    }
+
+    /**
+     * Parses query options (see {@link #QUERY_OPTIONS}) into a new {@link Config} instance. Other options are rejected.
+     *
+     * @param args command line style arguments, e.g. {@code ["--groupId", "org.example", "-t"]}
+     * @return configuration with the query options set and defaults for the rest
+     * @throws ParameterException when the arguments are not valid query options
+     */
+    static Config parseQueryArgs(List<String> args) {
+        return parseQueryArgs(args, new Config());
+    }
+
+    /**
+     * Parses query options (see {@link #QUERY_OPTIONS}) into a new {@link Config} instance. The query options which are not
+     * in the arguments are copied from the given configuration, the other options have the default values.
+     *
+     * @throws ParameterException when the arguments are not valid query options
+     */
+    static Config parseQueryArgs(List<String> args, Config defaults) {
+        Config config = builder().withGroupId(defaults.groupId).withArtifactId(defaults.artifactId)
+                .withArtifactVersion(defaults.artifactVersion).withVersionRange(defaults.versionRange)
+                .withPackaging(defaults.packaging).withClassifier(defaults.classifier).withLastDays(defaults.lastDays)
+                .withUseTimestamp(defaults.useTimestamp).withTimestampFormat(defaults.timestampFormat)
+                .withFlushInterval(defaults.flushInterval).withDedup(defaults.dedup).withSort(defaults.sort)
+                .withLimit(defaults.limit).withLatest(defaults.latest).withFormat(defaults.format).withCount(defaults.count)
+                .withFacet(defaults.facet).withClassName(defaults.className).build();
+        JCommander jcmd = JCommander.newBuilder().addObject(config).build();
+        for (String arg : args) {
+            if (arg.startsWith("-")) {
+                ParameterDescription pd = jcmd.getParameters().stream()
+                        .filter(p -> Arrays.asList(p.getParameter().names()).contains(arg)).findFirst()
+                        .orElseThrow(() -> new ParameterException("Unknown option: " + arg));
+                if (!QUERY_OPTIONS.contains(pd.getLongestName())) {
+                    throw new ParameterException("Option is not allowed in a query: " + arg);
+                }
+            }
+        }
+        jcmd.parse(args.toArray(new String[0]));
+        return config;
+    }
+
+    /**
+     * Returns {@code true} when the given query option is a flag (i.e. it doesn't take a value).
+     */
+    static boolean isFlagOption(String name) {
+        JCommander jcmd = JCommander.newBuilder().addObject(new Config()).build();
+        return jcmd.getParameters().stream().filter(p -> Arrays.asList(p.getParameter().names()).contains(name))
+                .anyMatch(p -> p.getParameterized().getType() == boolean.class);
     }
 
     public String getGroupId() {
@@ -96,8 +261,8 @@ public class Config {
         return configDataDir;
     }
 
-    public String getConfigRepo() {
-        return configRepo;
+    public List<String> getConfigRepos() {
+        return configRepos;
     }
 
     public boolean isPrintHelp() {
@@ -120,6 +285,26 @@ public class Config {
         return timestampFormat;
     }
 
+    public int getFlushInterval() {
+        return flushInterval;
+    }
+
+    public boolean isDedup() {
+        return dedup;
+    }
+
+    public String getSort() {
+        return sort;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public boolean isLatest() {
+        return latest;
+    }
+
     public boolean isSkipUpdate() {
         return skipUpdate;
     }
@@ -128,10 +313,93 @@ public class Config {
         return forceUpdate;
     }
 
+    public int getFetchThreads() {
+        return fetchThreads;
+    }
+
+    public int getServerPort() {
+        return serverPort;
+    }
+
+    public String getMetrics() {
+        return metrics;
+    }
+
+    public boolean isReadOnly() {
+        return readOnly;
+    }
+
+    public boolean isRefresh() {
+        return refresh;
+    }
+
+    public String getBatch() {
+        return batch;
+    }
+
+    public String getFormat() {
+        return format;
+    }
+
+    public String getChanges() {
+        return changes;
+    }
+
+    public int getCacheSize() {
+        return cacheSize;
+    }
+
+    public String getArtifactVersion() {
+        return artifactVersion;
+    }
+
+    public String getVersionRange() {
+        return versionRange;
+    }
+
+    public int getIndexThreads() {
+        return indexThreads;
+    }
+
+    public boolean isForceMerge() {
+        return forceMerge;
+    }
+
+    public boolean isCount() {
+        return count;
+    }
+
+    public String getFacet() {
+        return facet;
+    }
+
+    public String getDistinct() {
+        return distinct;
+    }
+
+    public String getIdentify() {
+        return identify;
+    }
+
+    public boolean isClassIndex() {
+        return classIndex;
+    }
+
+    public String getClassName() {
+        return className;
+    }
+
+    public String getIngestGroups() {
+        return ingestGroups;
+    }
+
     @Override
     public int hashCode() {
-        return Objects.hash(artifactId, classifier, configDataDir, configRepo, groupId, lastDays, packaging, printHelp,
-                printVersion, quiet, timestampFormat, useTimestamp, skipUpdate, forceUpdate);
+        return Objects.hash(artifactId, classifier, configDataDir, configRepos, groupId, lastDays, packaging, printHelp,
+                printVersion, quiet, timestampFormat, useTimestamp, flushInterval, dedup, sort, limit, latest, skipUpdate,
+                forceUpdate, fetchThreads, serverPort, metrics, readOnly, refresh, batch, format, changes, cacheSize,
+                artifactVersion, versionRange, indexThreads, forceMerge, count, facet, distinct, identify, classIndex,
+                className, ingestGroups);
     }
 
     @Override
@@ -144,21 +412,40 @@ public class Config {
             return false;
         Config other = (Config) obj;
         return Objects.equals(artifactId, other.artifactId) && Objects.equals(classifier, other.classifier)
-                && Objects.equals(configDataDir, other.configDataDir) && Objects.equals(configRepo, other.configRepo)
+                && Objects.equals(configDataDir, other.configDataDir) && Objects.equals(configRepos, other.configRepos)
                 && Objects.equals(groupId, other.groupId) && lastDays == other.lastDays
                 && Objects.equals(packaging, other.packaging) && printHelp == other.printHelp
                 && printVersion == other.printVersion && quiet == other.quiet
                 && Objects.equals(timestampFormat, other.timestampFormat) && useTimestamp == other.useTimestamp
-                && skipUpdate == other.skipUpdate && forceUpdate == other.forceUpdate;
+                && flushInterval == other.flushInterval && dedup == other.dedup
+                && Objects.equals(sort, other.sort) && limit == other.limit && latest == other.latest
+                && skipUpdate == other.skipUpdate && forceUpdate == other.forceUpdate
+                && fetchThreads == other.fetchThreads && serverPort == other.serverPort
+                && Objects.equals(metrics, other.metrics) && readOnly == other.readOnly && refresh == other.refresh
+                && Objects.equals(batch, other.batch) && Objects.equals(format, other.format)
+                && Objects.equals(changes, other.changes) && cacheSize == other.cacheSize
+                && Objects.equals(artifactVersion, other.artifactVersion)
+                && Objects.equals(versionRange, other.versionRange) && indexThreads == other.indexThreads
+                && forceMerge == other.forceMerge && count == other.count && Objects.equals(facet, other.facet)
+                && Objects.equals(distinct, other.distinct) && Objects.equals(identify, other.identify)
+                && classIndex == other.classIndex && Objects.equals(className, other.className)
+                && Objects.equals(ingestGroups, other.ingestGroups);
     }
 
     @Override
     public String toString() {
         return "Config [printHelp=" + printHelp + ", quiet=" + quiet + ", printVersion=" + printVersion + ", groupId=" + groupId
                 + ", artifactId=" + artifactId + ", packaging=" + packaging + ", classifier=" + classifier + ", lastDays="
-                + lastDays + ", configDataDir=" + configDataDir + ", configRepo=" + configRepo + ", useTimestamp="
-                + useTimestamp + ", timestampFormat=" + timestampFormat + ", skipUpdate=" + skipUpdate + ", forceUpdate="
-                + forceUpdate + "]";
+                + lastDays + ", configDataDir=" + configDataDir + ", configRepos=" + configRepos + ", useTimestamp="
+                + useTimestamp + ", timestampFormat=" + timestampFormat + ", flushInterval=" + flushInterval + ", dedup="
+                + dedup + ", sort=" + sort + ", limit=" + limit + ", latest=" + latest + ", skipUpdate=" + skipUpdate
+                + ", forceUpdate=" + forceUpdate + ", fetchThreads=" + fetchThreads + ", serverPort=" + serverPort
+                + ", metrics=" + metrics + ", readOnly=" + readOnly + ", refresh=" + refresh + ", batch=" + batch
+                + ", format=" + format + ", changes=" + changes + ", cacheSize=" + cacheSize
+                + ", artifactVersion=" + artifactVersion + ", versionRange=" + versionRange
+                + ", indexThreads=" + indexThreads + ", forceMerge=" + forceMerge + ", count=" + count
+                + ", facet=" + facet + ", distinct=" + distinct + ", identify=" + identify
+                + ", classIndex=" + classIndex + ", className=" + className + ", ingestGroups=" + ingestGroups + "]";
     }
 
     public static Builder builder() {
@@ -175,11 +462,36 @@ public class Config {
         private String classifier = "-";
         private int lastDays = 14;
         private File configDataDir = new File(System.getProperty("user.home"), ".mvnquery");
-        private String configRepo = "https://repo1.maven.org/maven2";
+        private List<String> configRepos = List.of("https://repo1.maven.org/maven2");
         private boolean useTimestamp;
         private String timestampFormat;
+        private int flushInterval;
+        private boolean dedup;
+        private String sort;
+        private int limit;
+        private boolean latest;
         private boolean skipUpdate;
         private boolean forceUpdate;
+        private int fetchThreads = 4;
+        private int serverPort;
+        private String metrics;
+        private boolean readOnly;
+        private boolean refresh;
+        private String batch;
+        private String format;
+        private String changes;
+        private int cacheSize;
+        private String artifactVersion;
+        private String versionRange;
+        private int indexThreads = Math.min(4, Runtime.getRuntime().availableProcessors());
+        private boolean forceMerge;
+        private boolean count;
+        private String facet;
+        private String distinct;
+        private String identify;
+        private boolean classIndex;
+        private String className;
+        private String ingestGroups;
 
         private Builder() {
         }
@@ -229,8 +541,8 @@ public class Config {
             return this;
         }
 
-        public Builder withConfigRepo(String configRepo) {
-            this.configRepo = configRepo;
+        public Builder withConfigRepo(String... configRepos) {
+            this.configRepos = List.of(configRepos);
             return this;
         }
 
@@ -244,6 +556,31 @@ public class Config {
             return this;
         }
 
+        public Builder withFlushInterval(int flushInterval) {
+            this.flushInterval = flushInterval;
+            return this;
+        }
+
+        public Builder withDedup(boolean dedup) {
+            this.dedup = dedup;
+            return this;
+        }
+
+        public Builder withSort(String sort) {
+            this.sort = sort;
+            return this;
+        }
+
+        public Builder withLimit(int limit) {
+            this.limit = limit;
+            return this;
+        }
+
+        public Builder withLatest(boolean latest) {
+            this.latest = latest;
+            return this;
+        }
+
         public Builder withSkipUpdate(boolean skipUpdate) {
             this.skipUpdate = skipUpdate;
             return this;
@@ -254,6 +591,106 @@ public class Config {
             return this;
         }
 
+        public Builder withFetchThreads(int fetchThreads) {
+            this.fetchThreads = fetchThreads;
+            return this;
+        }
+
+        public Builder withServerPort(int serverPort) {
+            this.serverPort = serverPort;
+            return this;
+        }
+
+        public Builder withMetrics(String metrics) {
+            this.metrics = metrics;
+            return this;
+        }
+
+        public Builder withReadOnly(boolean readOnly) {
+            this.readOnly = readOnly;
+            return this;
+        }
+
+        public Builder withRefresh(boolean refresh) {
+            this.refresh = refresh;
+            return this;
+        }
+
+        public Builder withBatch(String batch) {
+            this.batch = batch;
+            return this;
+        }
+
+        public Builder withFormat(String format) {
+            this.format = format;
+            return this;
+        }
+
+        public Builder withChanges(String changes) {
+            this.changes = changes;
+            return this;
+        }
+
+        public Builder withCacheSize(int cacheSize) {
+            this.cacheSize = cacheSize;
+            return this;
+        }
+
+        public Builder withArtifactVersion(String artifactVersion) {
+            this.artifactVersion = artifactVersion;
+            return this;
+        }
+
+        public Builder withVersionRange(String versionRange) {
+            this.versionRange = versionRange;
+            return this;
+        }
+
+        public Builder withIndexThreads(int indexThreads) {
+            this.indexThreads = indexThreads;
+            return this;
+        }
+
+        public Builder withForceMerge(boolean forceMerge) {
+            this.forceMerge = forceMerge;
+            return this;
+        }
+
+        public Builder withCount(boolean count) {
+            this.count = count;
+            return this;
+        }
+
+        public Builder withFacet(String facet) {
+            this.facet = facet;
+            return this;
+        }
+
+        public Builder withDistinct(String distinct) {
+            this.distinct = distinct;
+            return this;
+        }
+
+        public Builder withIdentify(String identify) {
+            this.identify = identify;
+            return this;
+        }
+
+        public Builder withClassIndex(boolean classIndex) {
+            this.classIndex = classIndex;
+            return this;
+        }
+
+        public Builder withClassName(String className) {
+            this.className = className;
+            return this;
+        }
+
+        public Builder withIngestGroups(String ingestGroups) {
+            this.ingestGroups = ingestGroups;
+            return this;
+        }
+
         public Config build() {
             return new Config(this);
         }
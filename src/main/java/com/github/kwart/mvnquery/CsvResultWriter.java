@@ -0,0 +1,94 @@
+package com.github.kwart.mvnquery;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefBuilder;
+
+/**
+ * Comma separated values (RFC 4180) with a header line. The {@code tag} column is only present when the rows are tagged
+ * and the {@code lastModified} column when timestamps are enabled. Missing values are written as empty fields.
+ */
+class CsvResultWriter extends ResultWriter {
+
+    private final BytesRefBuilder timestamp = new BytesRefBuilder();
+
+    private boolean headerWritten;
+
+    CsvResultWriter(OutputStream out, Config queryConfig) {
+        super(out, queryConfig);
+    }
+
+    @Override
+    protected void writeRow(BytesRef tag, BytesRef groupId, BytesRef artifactId, BytesRef version, BytesRef extension,
+            BytesRef classifier, long lastModified) throws IOException {
+        if (!headerWritten) {
+            writeHeader(tag != null);
+        }
+        if (tag != null) {
+            putField(tag);
+            put(',');
+        }
+        putField(groupId);
+        put(',');
+        putField(artifactId);
+        put(',');
+        putField(version);
+        put(',');
+        putField(extension);
+        put(',');
+        putField(classifier);
+        if (isUseTimestamp()) {
+            put(',');
+            timestamp.copyChars(formatTimestamp(lastModified));
+            putField(timestamp.get());
+        }
+        put('\r');
+        put('\n');
+    }
+
+    @Override
+    protected void beforeFlush() throws IOException {
+        if (!headerWritten) {
+            writeHeader(false);
+        }
+    }
+
+    private void writeHeader(boolean tagged) throws IOException {
+        headerWritten = true;
+        putText(tagged ? "tag,groupId,artifactId,version,extension,classifier" : "groupId,artifactId,version,extension,classifier");
+        if (isUseTimestamp()) {
+            putText(",lastModified");
+        }
+        put('\r');
+        put('\n');
+    }
+
+    private void putField(BytesRef value) throws IOException {
+        if (value == null) {
+            return;
+        }
+        byte[] bytes = value.bytes;
+        int end = value.offset + value.length;
+        boolean quote = false;
+        for (int i = value.offset; i < end && !quote; i++) {
+            byte b = bytes[i];
+            quote = b == ',' || b == '"' || b == '\r' || b == '\n';
+        }
+        if (!quote) {
+            put(value);
+            return;
+        }
+        put('"');
+        int start = value.offset;
+        for (int i = value.offset; i < end; i++) {
+            if (bytes[i] == '"') {
+                put(bytes, start, i + 1 - start);
+                start = i;
+            }
+        }
+        put(bytes, start, end - start);
+        put('"');
+    }
+}
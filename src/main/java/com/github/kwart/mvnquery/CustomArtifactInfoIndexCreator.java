@@ -3,8 +3,13 @@ import java.util.ArrayList;
 import java.util.List;
 
 import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.FieldType;
 import org.apache.lucene.document.LongPoint;
-import org.apache.lucene.document.StoredField;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.SortedDocValuesField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.util.BytesRef;
 import org.apache.maven.index.ArtifactInfo;
 import org.apache.maven.index.IndexerField;
 import org.apache.maven.index.IndexerFieldVersion;
@@ -13,22 +18,101 @@ import org.apache.maven.index.creator.MinimalArtifactInfoIndexCreator;
 
 public class CustomArtifactInfoIndexCreator extends MinimalArtifactInfoIndexCreator {
 
+    /**
+     * Version of the fields layout produced by this creator. Increase it when the document fields change, so the existing
+     * indexes are fully reindexed.
+     */
+    public static final int LAYOUT_VERSION = 6;
+
+    // DocValues (columnar) copies of the fields printed in query results, so the results don't need stored fields
+    public static final String DV_GROUP_ID = "dv_g";
+    public static final String DV_ARTIFACT_ID = "dv_a";
+    public static final String DV_VERSION = "dv_v";
+    public static final String DV_EXTENSION = "dv_e";
+    public static final String DV_CLASSIFIER = "dv_c";
+    public static final String DV_LAST_MODIFIED = "dv_m";
+    // Maven version order sort key, see VersionKey
+    public static final String DV_VERSION_KEY = "dv_vk";
+
+    // Reversed groupId and artifactId keywords, so the *suffix pattern filters are prefix queries, see FilterPattern
+    public static final String KW_GROUP_ID_REVERSED = "kw_gr";
+    public static final String KW_ARTIFACT_ID_REVERSED = "kw_ar";
+    // Indexed Maven version order key for the version range filters, see VersionRange
+    public static final String KW_VERSION_KEY = "kw_vk";
+
     public static final IndexerField FLD_LAST_MODIFIED = new IndexerField(
             MAVEN.LAST_MODIFIED,
             IndexerFieldVersion.V1,
             "m2",
-            "Artifact last modified (not indexed, stored)",
-            StoredField.TYPE);
+            "Artifact last modified (indexed as a long point, not stored)",
+            longPointType());
+
+    private final IngestFilter ingestFilter;
+
+    public CustomArtifactInfoIndexCreator() {
+        this(null);
+    }
+
+    /**
+     * @param ingestFilter the groupIds to index, or {@code null} to index all the artifacts
+     */
+    CustomArtifactInfoIndexCreator(IngestFilter ingestFilter) {
+        this.ingestFilter = ingestFilter;
+    }
+
+    IngestFilter getIngestFilter() {
+        return ingestFilter;
+    }
 
     @Override
     public void updateDocument(ArtifactInfo ai, Document doc) {
+        if (ingestFilter != null && !ingestFilter.acceptGroupId(ai.getGroupId())) {
+            // only the UINFO is written, the update request drops the document by the same filter
+            return;
+        }
         super.updateDocument(ai, doc);
 
         if (ai.getLastModified() > 0) {
-            // Store lastModified as a number so we can query it
+            // Index lastModified as a number so we can query it, the results read it from the DocValues
             doc.add(new LongPoint(FLD_LAST_MODIFIED.getKey(), ai.getLastModified()));
-            // Also store it so we can retrieve it later
-            doc.add(new StoredField(FLD_LAST_MODIFIED.getKey(), ai.getLastModified()));
+        }
+
+        addSortedDocValue(doc, DV_GROUP_ID, ai.getGroupId());
+        addSortedDocValue(doc, DV_ARTIFACT_ID, ai.getArtifactId());
+        addSortedDocValue(doc, DV_VERSION, ai.getVersion());
+        addSortedDocValue(doc, DV_EXTENSION, ai.getFileExtension());
+        addSortedDocValue(doc, DV_CLASSIFIER, ai.getClassifier());
+        doc.add(new NumericDocValuesField(DV_LAST_MODIFIED, ai.getLastModified()));
+        if (ai.getVersion() != null) {
+            BytesRef versionKey = VersionKey.of(ai.getVersion());
+            doc.add(new SortedDocValuesField(DV_VERSION_KEY, versionKey));
+            doc.add(new StringField(KW_VERSION_KEY, versionKey, Field.Store.NO));
+        }
+
+        if (ai.getGroupId() != null) {
+            addKeyword(doc, KW_GROUP_ID_REVERSED, FilterPattern.reverse(ai.getGroupId()));
+        }
+        if (ai.getArtifactId() != null) {
+            addKeyword(doc, KW_ARTIFACT_ID_REVERSED, FilterPattern.reverse(ai.getArtifactId()));
+        }
+    }
+
+    private static FieldType longPointType() {
+        FieldType type = new FieldType();
+        type.setDimensions(1, Long.BYTES);
+        type.freeze();
+        return type;
+    }
+
+    private static void addKeyword(Document doc, String field, String value) {
+        if (value != null) {
+            doc.add(new StringField(field, value, Field.Store.NO));
+        }
+    }
+
+    private static void addSortedDocValue(Document doc, String field, String value) {
+        if (value != null) {
+            doc.add(new SortedDocValuesField(field, new BytesRef(value)));
         }
     }
 
@@ -0,0 +1,264 @@
+package com.github.kwart.mvnquery;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.MultiBits;
+import org.apache.lucene.index.MultiTerms;
+import org.apache.lucene.index.PostingsEnum;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefBuilder;
+import org.apache.lucene.util.StringHelper;
+import org.apache.maven.index.ArtifactInfo;
+import org.apache.maven.index.creator.MinimalArtifactInfoIndexCreator;
+
+/**
+ * Iterates the distinct groupIds ({@code --distinct groupId}) or groupId:artifactId pairs ({@code --distinct artifactId})
+ * of an index in the sorted order by walking the terms dictionary, no document is visited. The groupIds are the terms of
+ * the groupId keyword field, the walk seeks to the prefix of the groupId filter and stops when the terms don't match it
+ * anymore. The artifactIds of a groupId are read from the UINFO terms ({@code groupId|artifactId|version|...}) starting
+ * at {@code groupId|} followed by the artifactId filter prefix, after an artifactId is found the walk seeks past all its
+ * versions. Terms of deleted documents only are skipped.
+ */
+final class DistinctTerms {
+
+    /**
+     * Order of the values, by the groupId and then by the artifactId.
+     */
+    static final Comparator<DistinctTerms> ORDER = Comparator.comparing(DistinctTerms::groupId)
+            .thenComparing(DistinctTerms::artifactId, Comparator.nullsFirst(Comparator.naturalOrder()));
+
+    private static final byte FS = (byte) ArtifactInfo.FS.charAt(0);
+
+    private final TermsEnum groupIdTerms;
+    private final TermsEnum uinfoTerms;
+    private final Bits liveDocs;
+    private final BytesRef groupIdPrefix;
+    private final boolean exactGroupId;
+    private final BytesRef artifactIdPrefix;
+    private final boolean exactArtifactId;
+    private final BytesRefBuilder groupId = new BytesRefBuilder();
+    private final BytesRefBuilder seekTarget = new BytesRefBuilder();
+    private final List<BytesRef> artifactIds = new ArrayList<>();
+    private PostingsEnum postings;
+    private int artifactIndex;
+    private boolean started;
+
+    private DistinctTerms(TermsEnum groupIdTerms, TermsEnum uinfoTerms, Bits liveDocs, String groupIdFilter,
+            String artifactIdFilter) {
+        this.groupIdTerms = groupIdTerms;
+        this.uinfoTerms = uinfoTerms;
+        this.liveDocs = liveDocs;
+        this.exactGroupId = groupIdFilter != null && !groupIdFilter.endsWith("*");
+        this.groupIdPrefix = new BytesRef(groupIdFilter == null ? "" : stripWildcard(groupIdFilter));
+        this.exactArtifactId = artifactIdFilter != null && !artifactIdFilter.endsWith("*");
+        this.artifactIdPrefix = artifactIdFilter == null ? null : new BytesRef(stripWildcard(artifactIdFilter));
+    }
+
+    /**
+     * Returns {@code true} for {@code groupId} (list groupIds) and {@code false} for {@code artifactId} (list
+     * groupId:artifactId pairs).
+     *
+     * @throws IllegalArgumentException when the listing or the groupId and artifactId filters are not supported
+     */
+    static boolean isGroupIdListing(Config queryConfig) {
+        checkFilter("groupId", queryConfig.getGroupId());
+        checkFilter("artifactId", queryConfig.getArtifactId());
+        switch (queryConfig.getDistinct()) {
+            case "groupId":
+                return true;
+            case "artifactId":
+                return false;
+            default:
+                throw new IllegalArgumentException(
+                        "Unsupported distinct listing: " + queryConfig.getDistinct() + " (use groupId or artifactId)");
+        }
+    }
+
+    /**
+     * Opens the iteration over the given index reader.
+     */
+    static DistinctTerms open(IndexReader reader, Config queryConfig) throws IOException {
+        boolean groupIds = isGroupIdListing(queryConfig);
+        TermsEnum groupIdTerms = iterator(reader, MinimalArtifactInfoIndexCreator.FLD_GROUP_ID_KW.getKey());
+        TermsEnum uinfoTerms = groupIds ? null : iterator(reader, ArtifactInfo.UINFO);
+        return new DistinctTerms(groupIdTerms, uinfoTerms, MultiBits.getLiveDocs(reader), queryConfig.getGroupId(),
+                groupIds ? null : queryConfig.getArtifactId());
+    }
+
+    /**
+     * Moves to the next value.
+     *
+     * @return {@code false} at the end
+     */
+    boolean next() throws IOException {
+        if (uinfoTerms != null && artifactIndex + 1 < artifactIds.size()) {
+            artifactIndex++;
+            return true;
+        }
+        while (nextGroupId()) {
+            if (uinfoTerms == null) {
+                return true;
+            }
+            collectArtifactIds();
+            if (!artifactIds.isEmpty()) {
+                artifactIndex = 0;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the groupId of the current value. The bytes are only valid until the next move.
+     */
+    BytesRef groupId() {
+        return groupId.get();
+    }
+
+    /**
+     * Returns the artifactId of the current value, or {@code null} when the groupIds are listed.
+     */
+    BytesRef artifactId() {
+        return uinfoTerms == null ? null : artifactIds.get(artifactIndex);
+    }
+
+    /**
+     * Writes the current value ({@code groupId} or {@code groupId:artifactId}) as a line.
+     */
+    void write(OutputStream out) throws IOException {
+        BytesRef value = groupId();
+        out.write(value.bytes, value.offset, value.length);
+        value = artifactId();
+        if (value != null) {
+            out.write(':');
+            out.write(value.bytes, value.offset, value.length);
+        }
+        out.write('\n');
+    }
+
+    private boolean nextGroupId() throws IOException {
+        if (groupIdTerms == null) {
+            return false;
+        }
+        BytesRef term;
+        if (!started) {
+            started = true;
+            term = seek(groupIdTerms, groupIdPrefix);
+        } else if (exactGroupId) {
+            return false;
+        } else {
+            term = groupIdTerms.next();
+        }
+        while (term != null && StringHelper.startsWith(term, groupIdPrefix)) {
+            if (exactGroupId && term.length != groupIdPrefix.length) {
+                return false;
+            }
+            if (isLive(groupIdTerms)) {
+                groupId.copyBytes(term);
+                return true;
+            }
+            if (exactGroupId) {
+                return false;
+            }
+            term = groupIdTerms.next();
+        }
+        return false;
+    }
+
+    /**
+     * Collects the artifactIds of the current groupId. The UINFO terms are ordered by {@code artifactId|}, which differs
+     * from the order of the artifactIds (e.g. {@code a-b} and {@code a}), so they are sorted afterwards.
+     */
+    private void collectArtifactIds() throws IOException {
+        artifactIds.clear();
+        seekTarget.copyBytes(groupId.get());
+        seekTarget.append(FS);
+        int artifactStart = seekTarget.length();
+        BytesRef groupPrefix = BytesRef.deepCopyOf(seekTarget.get());
+        if (artifactIdPrefix != null) {
+            seekTarget.append(artifactIdPrefix);
+            if (exactArtifactId) {
+                seekTarget.append(FS);
+            }
+        }
+        BytesRef term = seek(uinfoTerms, seekTarget.get());
+        while (term != null && StringHelper.startsWith(term, groupPrefix)) {
+            int artifactEnd = indexOf(term, FS, term.offset + artifactStart);
+            if (artifactEnd < 0) {
+                term = uinfoTerms.next();
+                continue;
+            }
+            BytesRef artifactId = new BytesRef(term.bytes, term.offset + artifactStart,
+                    artifactEnd - term.offset - artifactStart);
+            if (artifactIdPrefix != null && (exactArtifactId ? !artifactId.bytesEquals(artifactIdPrefix)
+                    : !StringHelper.startsWith(artifactId, artifactIdPrefix))) {
+                // the walk started at the filter prefix, so all the matching artifactIds were visited
+                break;
+            }
+            if (!isLive(uinfoTerms)) {
+                term = uinfoTerms.next();
+                continue;
+            }
+            artifactIds.add(BytesRef.deepCopyOf(artifactId));
+            // skip the other versions of the artifact, the character after "|" sorts behind them
+            seekTarget.copyBytes(groupPrefix);
+            seekTarget.append(artifactId);
+            seekTarget.append((byte) (FS + 1));
+            term = seek(uinfoTerms, seekTarget.get());
+        }
+        artifactIds.sort(null);
+    }
+
+    /**
+     * Returns {@code true} when the current term has a document which is not deleted.
+     */
+    private boolean isLive(TermsEnum termsEnum) throws IOException {
+        if (liveDocs == null) {
+            return true;
+        }
+        postings = termsEnum.postings(postings, PostingsEnum.NONE);
+        for (int doc = postings.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = postings.nextDoc()) {
+            if (liveDocs.get(doc)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static BytesRef seek(TermsEnum termsEnum, BytesRef target) throws IOException {
+        return termsEnum.seekCeil(target) == TermsEnum.SeekStatus.END ? null : termsEnum.term();
+    }
+
+    private static TermsEnum iterator(IndexReader reader, String field) throws IOException {
+        Terms terms = MultiTerms.getTerms(reader, field);
+        return terms == null ? null : terms.iterator();
+    }
+
+    private static int indexOf(BytesRef term, byte b, int from) {
+        for (int i = from; i < term.offset + term.length; i++) {
+            if (term.bytes[i] == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static String stripWildcard(String filter) {
+        return filter.endsWith("*") ? filter.substring(0, filter.length() - 1) : filter;
+    }
+
+    private static void checkFilter(String name, String value) {
+        if (value != null && (value.isEmpty() || FilterPattern.isPattern(stripWildcard(value)))) {
+            throw new IllegalArgumentException("The distinct listing supports only exact or prefix* " + name + " filters");
+        }
+    }
+}
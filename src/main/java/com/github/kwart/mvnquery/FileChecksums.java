@@ -0,0 +1,89 @@
+package com.github.kwart.mvnquery;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Lists the files to identify ({@code --identify}) and computes their SHA-1 checksums in the form stored in the Maven
+ * index (lowercase hex). The files are hashed through memory mapped windows, so the content goes from the page cache to
+ * the digest without being copied to the heap.
+ */
+final class FileChecksums {
+
+    static final int MAP_WINDOW = 64 * 1024 * 1024;
+
+    private static final Set<String> ARCHIVE_EXTENSIONS = Set.of(".jar", ".war", ".ear");
+
+    private FileChecksums() {
+    }
+
+    /**
+     * Returns the archives ({@code *.jar}, {@code *.war} and {@code *.ear}) in the given directory and its subdirectories,
+     * or the files listed in the given file.
+     */
+    static List<Path> list(Path path) throws IOException {
+        if (!Files.isDirectory(path)) {
+            try (BufferedReader reader = Files.newBufferedReader(path)) {
+                return read(reader);
+            }
+        }
+        try (Stream<Path> files = Files.walk(path)) {
+            return files.filter(FileChecksums::isArchive).sorted().toList();
+        }
+    }
+
+    /**
+     * Reads the file list, one path per line. Empty lines and lines starting with {@code #} are skipped.
+     */
+    static List<Path> read(BufferedReader reader) throws IOException {
+        List<Path> files = new ArrayList<>();
+        for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+            line = line.trim();
+            if (!line.isEmpty() && !line.startsWith("#")) {
+                files.add(Path.of(line));
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Returns the SHA-1 checksum of the given file.
+     */
+    static String sha1(Path file) throws IOException {
+        return sha1(file, MAP_WINDOW);
+    }
+
+    static String sha1(Path file, int window) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            for (long position = 0L; position < size; position += window) {
+                digest.update(channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(window, size - position)));
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static boolean isArchive(Path file) {
+        String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        int dot = name.lastIndexOf('.');
+        return dot >= 0 && ARCHIVE_EXTENSIONS.contains(name.substring(dot)) && Files.isRegularFile(file);
+    }
+}
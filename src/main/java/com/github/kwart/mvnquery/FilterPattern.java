@@ -0,0 +1,117 @@
+package com.github.kwart.mvnquery;
+
+import static com.github.kwart.mvnquery.CustomArtifactInfoIndexCreator.KW_ARTIFACT_ID_REVERSED;
+import static com.github.kwart.mvnquery.CustomArtifactInfoIndexCreator.KW_GROUP_ID_REVERSED;
+
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.PrefixQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.RegexpQuery;
+import org.apache.lucene.search.WildcardQuery;
+import org.apache.maven.index.Field;
+import org.apache.maven.index.MAVEN;
+import org.apache.maven.index.creator.MinimalArtifactInfoIndexCreator;
+
+/**
+ * Compiles the pattern filters of the groupId, artifactId, version and classifier to Lucene automaton queries on the
+ * keyword (not analyzed) fields written by {@link MinimalArtifactInfoIndexCreator}:
+ * <ul>
+ * <li>{@code /regex/} - {@link RegexpQuery} (Lucene regular expression syntax, matching the whole value),</li>
+ * <li>{@code prefix*} - {@link PrefixQuery},</li>
+ * <li>{@code *suffix} - {@link PrefixQuery} on the reversed value written by {@link CustomArtifactInfoIndexCreator}
+ * (groupId and artifactId only),</li>
+ * <li>other values with {@code *} or {@code ?} - {@link WildcardQuery}.</li>
+ * </ul>
+ * Maven coordinates can't contain these characters, so no escaping is needed.
+ */
+final class FilterPattern {
+
+    private FilterPattern() {
+    }
+
+    /**
+     * Returns the query for the given filter value, or {@code null} when the value is not a pattern (or the field doesn't
+     * support patterns).
+     *
+     * @throws IllegalArgumentException when the regular expression is not valid
+     */
+    static Query toQuery(Field field, String value) {
+        String keywordField;
+        String reversedField = null;
+        if (field == MAVEN.GROUP_ID) {
+            keywordField = MinimalArtifactInfoIndexCreator.FLD_GROUP_ID_KW.getKey();
+            reversedField = KW_GROUP_ID_REVERSED;
+        } else if (field == MAVEN.ARTIFACT_ID) {
+            keywordField = MinimalArtifactInfoIndexCreator.FLD_ARTIFACT_ID_KW.getKey();
+            reversedField = KW_ARTIFACT_ID_REVERSED;
+        } else if (field == MAVEN.VERSION) {
+            keywordField = MinimalArtifactInfoIndexCreator.FLD_VERSION_KW.getKey();
+        } else if (field == MAVEN.CLASSIFIER) {
+            keywordField = MinimalArtifactInfoIndexCreator.FLD_CLASSIFIER.getKey();
+        } else {
+            return null;
+        }
+        int length = value.length();
+        if (isRegex(value)) {
+            return new RegexpQuery(new Term(keywordField, value.substring(1, length - 1)));
+        }
+        int firstWildcard = indexOfWildcard(value, 0);
+        if (firstWildcard < 0) {
+            return null;
+        }
+        if (firstWildcard == length - 1 && value.charAt(firstWildcard) == '*') {
+            return new PrefixQuery(new Term(keywordField, value.substring(0, length - 1)));
+        }
+        if (reversedField != null && value.charAt(0) == '*' && indexOfWildcard(value, 1) < 0) {
+            return new PrefixQuery(new Term(reversedField, reverse(value.substring(1))));
+        }
+        return new WildcardQuery(new Term(keywordField, value));
+    }
+
+    /**
+     * Compiles the pattern filters and the version range of the given configuration, so invalid ones fail before the query
+     * runs.
+     *
+     * @throws IllegalArgumentException when a regular expression or the version range is not valid
+     */
+    static void check(Config queryConfig) {
+        check(MAVEN.GROUP_ID, queryConfig.getGroupId());
+        check(MAVEN.ARTIFACT_ID, queryConfig.getArtifactId());
+        check(MAVEN.VERSION, queryConfig.getArtifactVersion());
+        check(MAVEN.CLASSIFIER, queryConfig.getClassifier());
+        if (queryConfig.getVersionRange() != null) {
+            VersionRange.toQuery(queryConfig.getVersionRange());
+        }
+    }
+
+    private static void check(Field field, String value) {
+        if (value != null) {
+            toQuery(field, value);
+        }
+    }
+
+    /**
+     * Returns {@code true} when the given filter value is a pattern rather than an exact value.
+     */
+    static boolean isPattern(String value) {
+        return isRegex(value) || indexOfWildcard(value, 0) >= 0;
+    }
+
+    static String reverse(String value) {
+        return new StringBuilder(value).reverse().toString();
+    }
+
+    private static boolean isRegex(String value) {
+        return value.length() > 1 && value.charAt(0) == '/' && value.charAt(value.length() - 1) == '/';
+    }
+
+    private static int indexOfWildcard(String value, int from) {
+        for (int i = from; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == WildcardQuery.WILDCARD_STRING || c == WildcardQuery.WILDCARD_CHAR) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,124 @@
+package com.github.kwart.mvnquery;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+
+import org.apache.lucene.document.Document;
+import org.apache.maven.index.ArtifactInfo;
+import org.apache.maven.index.context.DocumentFilter;
+import org.apache.maven.index.context.IndexCreator;
+import org.apache.maven.index.context.IndexingContext;
+
+/**
+ * Selects the groupIds kept by the index updates ({@code --ingest-groups}), the other artifacts are not indexed at all.
+ * An entry {@code org.foo} matches the {@code org.foo} groupId and its subgroups ({@code org.foo.bar}), an entry
+ * {@code org.fo*} matches any groupId starting with {@code org.fo}.
+ * <p>
+ * The {@link CustomArtifactInfoIndexCreator} adds no fields to the documents of the other artifacts, so they are
+ * written to the temporary index of an update as the bare UINFO only. As a {@link DocumentFilter} of the update request
+ * it then drops them before the documents are merged into the repository index. The documents without UINFO
+ * (descriptor, groups and deletion markers) are always accepted.
+ */
+final class IngestFilter implements DocumentFilter {
+
+    private static final char FS = ArtifactInfo.FS.charAt(0);
+
+    private final List<String> groupIds = new ArrayList<>();
+    private final List<String> prefixes = new ArrayList<>();
+    private final String value;
+
+    private IngestFilter(TreeSet<String> entries) {
+        for (String entry : entries) {
+            if (entry.endsWith("*")) {
+                prefixes.add(entry.substring(0, entry.length() - 1));
+            } else {
+                groupIds.add(entry);
+            }
+        }
+        this.value = String.join(",", entries);
+    }
+
+    /**
+     * Parses the comma separated groupIds. Returns {@code null} (all the artifacts are indexed) for {@code null}, an
+     * empty value or {@code *}.
+     *
+     * @throws IllegalArgumentException when an entry is not a groupId or a prefix*
+     */
+    static IngestFilter parse(String value) {
+        if (value == null) {
+            return null;
+        }
+        TreeSet<String> entries = new TreeSet<>();
+        for (String entry : value.split(",")) {
+            entry = entry.trim();
+            if (entry.equals("*")) {
+                return null;
+            }
+            if (entry.isEmpty()) {
+                continue;
+            }
+            String groupId = entry.endsWith("*") ? entry.substring(0, entry.length() - 1) : entry;
+            if (groupId.isEmpty() || groupId.startsWith(".") || groupId.endsWith(".") && !entry.endsWith("*")
+                    || FilterPattern.isPattern(groupId) || groupId.indexOf(FS) >= 0) {
+                throw new IllegalArgumentException(
+                        "Invalid ingest groupId: " + entry + " (use a groupId, a groupId prefix* or *)");
+            }
+            entries.add(entry);
+        }
+        return entries.isEmpty() ? null : new IngestFilter(entries);
+    }
+
+    /**
+     * Returns the filter of the index updates of the given indexing context, or {@code null} when all the artifacts are
+     * indexed.
+     */
+    static IngestFilter of(IndexingContext indexingContext) {
+        for (IndexCreator indexCreator : indexingContext.getIndexCreators()) {
+            if (indexCreator instanceof CustomArtifactInfoIndexCreator creator) {
+                return creator.getIngestFilter();
+            }
+        }
+        return null;
+    }
+
+    boolean acceptGroupId(String groupId) {
+        if (groupId == null) {
+            return false;
+        }
+        for (String entry : groupIds) {
+            if (groupId.startsWith(entry)
+                    && (groupId.length() == entry.length() || groupId.charAt(entry.length()) == '.')) {
+                return true;
+            }
+        }
+        for (String prefix : prefixes) {
+            if (groupId.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Accepts the artifact with the given UINFO ({@code groupId|artifactId|version|...}).
+     */
+    boolean acceptUinfo(String uinfo) {
+        int end = uinfo.indexOf(FS);
+        return acceptGroupId(end < 0 ? uinfo : uinfo.substring(0, end));
+    }
+
+    @Override
+    public boolean accept(Document doc) {
+        String uinfo = doc.get(ArtifactInfo.UINFO);
+        return uinfo == null || acceptUinfo(uinfo);
+    }
+
+    /**
+     * Returns the normalized (sorted) entries, it's the value stored in the repository index properties.
+     */
+    @Override
+    public String toString() {
+        return value;
+    }
+}
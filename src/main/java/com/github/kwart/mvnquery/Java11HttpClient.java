@@ -1,43 +1,592 @@
 package com.github.kwart.mvnquery;
 
+import java.io.ByteArrayInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
 import java.net.HttpURLConnection;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 
 import org.apache.maven.index.updater.ResourceFetcher;
 
+/**
+ * {@link ResourceFetcher} based on the Java 11+ {@link HttpClient}. The resources are downloaded to files on virtual
+ * threads with a bounded number of concurrent requests:
+ * <ul>
+ * <li>when an incremental chunk is requested, the following chunks listed in the remote index properties are prefetched
+ * concurrently;</li>
+ * <li>large resources are downloaded in parallel segments by using HTTP range requests (when the server supports
+ * them);</li>
+ * <li>downloaded resources are verified against the {@code .sha1} (or {@code .md5}) checksum published next to them.</li>
+ * </ul>
+ * When a cache directory is configured, the downloaded files are kept there. An interrupted download is resumed by
+ * {@code If-Range} requests for the missing segments and a complete file is only revalidated by a conditional request
+ * ({@code If-None-Match}/{@code If-Modified-Since}), so nothing is transferred when the resource didn't change. The
+ * incremental chunks which are no longer listed in the remote index properties are removed from the cache by
+ * {@link #pruneCache()}.
+ */
 public class Java11HttpClient implements ResourceFetcher {
-        private final HttpClient client = HttpClient.newBuilder().followRedirects(HttpClient.Redirect.ALWAYS).build();
 
-        private URI uri;
+    static final String INDEX_PROPERTIES = "nexus-maven-repository-index.properties";
+    static final String INDEX_GZ = "nexus-maven-repository-index.gz";
+    static final long DEFAULT_SEGMENT_SIZE = 32L * 1024 * 1024;
 
-        @Override
-        public void connect(String id, String url) throws IOException {
-            this.uri = URI.create(url + "/");
+    private static final String PROP_INCREMENTAL_PREFIX = "nexus.index.incremental-";
+    private static final String INDEX_PREFIX = "nexus-maven-repository-index";
+    private static final Pattern CHUNK_NAME = Pattern.compile("nexus-maven-repository-index\\.(\\d+)\\.gz");
+    private static final List<String> CACHE_SUFFIXES = List.of(".meta.tmp", ".meta", ".part");
+    private static final Pattern CONTENT_RANGE = Pattern.compile("bytes (\\d+)-\\d+/(\\d+)");
+    private static final int HTTP_RANGE_NOT_SATISFIABLE = 416;
+    private static final List<String> CHECKSUM_EXTENSIONS = List.of("sha1", "md5");
+    private static final String META_ETAG = "etag";
+    private static final String META_LAST_MODIFIED = "last-modified";
+    private static final String META_LENGTH = "length";
+    private static final String META_SEGMENT_SIZE = "segment-size";
+    private static final String META_SEGMENTS = "segments";
+    private static final long PROGRESS_INTERVAL_NANOS = 5_000_000_000L;
+
+    private final HttpClient client = HttpClient.newBuilder().followRedirects(HttpClient.Redirect.ALWAYS).build();
+    private final int threads;
+    private final long segmentSize;
+    private final Path cacheDir;
+    private final Consumer<String> progressLog;
+    private final Semaphore permits;
+    private final Map<String, Future<Path>> prefetched = new ConcurrentHashMap<>();
+    private final TreeSet<Integer> remoteChunks = new TreeSet<>();
+    private boolean remoteChunksRead;
+    private final AtomicLong bytesDownloaded = new AtomicLong();
+    private final AtomicInteger chunksRetrieved = new AtomicInteger();
+
+    private URI uri;
+    private Path dir;
+    private ExecutorService executor;
+    private long progressStart;
+    private long lastProgress;
+
+    public Java11HttpClient() {
+        this(1, null, null);
+    }
+
+    /**
+     * @param threads maximal number of concurrent HTTP requests
+     * @param cacheDir directory where the downloaded files are kept between runs (may be {@code null} to download into
+     *        temporary files)
+     * @param progressLog consumer of download progress messages (may be {@code null})
+     */
+    public Java11HttpClient(int threads, Path cacheDir, Consumer<String> progressLog) {
+        this(threads, DEFAULT_SEGMENT_SIZE, cacheDir, progressLog);
+    }
+
+    Java11HttpClient(int threads, long segmentSize, Path cacheDir, Consumer<String> progressLog) {
+        this.threads = Math.max(1, threads);
+        this.segmentSize = segmentSize;
+        this.cacheDir = cacheDir;
+        this.progressLog = progressLog;
+        this.permits = new Semaphore(this.threads);
+    }
+
+    @Override
+    public void connect(String id, String url) throws IOException {
+        this.uri = URI.create(url + "/");
+        if (cacheDir != null) {
+            this.dir = Files.createDirectories(cacheDir);
+        } else {
+            this.dir = Files.createTempDirectory("mvnquery-fetch");
+        }
+        this.executor = Executors.newVirtualThreadPerTaskExecutor();
+        this.progressStart = System.nanoTime();
+        this.lastProgress = progressStart;
+    }
+
+    @Override
+    public void disconnect() throws IOException {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+        prefetched.clear();
+        if (dir != null && cacheDir == null) {
+            try (var files = Files.list(dir)) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    Files.deleteIfExists(file);
+                }
+            }
+            Files.deleteIfExists(dir);
+        }
+        dir = null;
+        if (bytesDownloaded.get() > 0) {
+            reportProgress(true);
+        }
+    }
+
+    @Override
+    public InputStream retrieve(String name) throws IOException, FileNotFoundException {
+        if (INDEX_PROPERTIES.equals(name)) {
+            byte[] data = Files.readAllBytes(await(download(name)));
+            readRemoteChunks(data);
+            return new ByteArrayInputStream(data);
+        }
+        Future<Path> future = prefetched.remove(name);
+        if (future == null) {
+            future = download(name);
+        }
+        Matcher matcher = CHUNK_NAME.matcher(name);
+        if (matcher.matches()) {
+            chunksRetrieved.incrementAndGet();
+            prefetchChunksAfter(Integer.parseInt(matcher.group(1)));
+        }
+        Path file = await(future);
+        return cacheDir != null ? Files.newInputStream(file) : Files.newInputStream(file, StandardOpenOption.DELETE_ON_CLOSE);
+    }
+
+    long getBytesDownloaded() {
+        return bytesDownloaded.get();
+    }
+
+    /**
+     * Returns the number of incremental chunks retrieved by the index updater.
+     */
+    int getChunksRetrieved() {
+        return chunksRetrieved.get();
+    }
+
+    private void readRemoteChunks(byte[] data) throws IOException {
+        Properties props = new Properties();
+        props.load(new ByteArrayInputStream(data));
+        synchronized (remoteChunks) {
+            remoteChunksRead = true;
+            remoteChunks.clear();
+            for (String key : props.stringPropertyNames()) {
+                if (key.startsWith(PROP_INCREMENTAL_PREFIX)) {
+                    try {
+                        remoteChunks.add(Integer.valueOf(props.getProperty(key).trim()));
+                    } catch (NumberFormatException e) {
+                        // ignore the chunk, it will be just fetched on request
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes the cached files of the incremental chunks which are not listed in the last retrieved remote index
+     * properties anymore (the index updater never requests them again), including their partial downloads. The remote
+     * index properties, the full index and the listed chunks are kept. It does nothing when there is no cache directory
+     * or no remote index properties were retrieved.
+     *
+     * @return the number of removed files
+     */
+    int pruneCache() throws IOException {
+        if (cacheDir == null || !Files.isDirectory(cacheDir)) {
+            return 0;
+        }
+        int removed = 0;
+        synchronized (remoteChunks) {
+            if (!remoteChunksRead) {
+                return 0;
+            }
+            try (var files = Files.list(cacheDir)) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    String name = file.getFileName().toString();
+                    if (name.startsWith(INDEX_PREFIX) && !isCurrent(resourceName(name)) && Files.deleteIfExists(file)) {
+                        removed++;
+                    }
+                }
+            }
+        }
+        return removed;
+    }
+
+    private boolean isCurrent(String name) {
+        if (INDEX_PROPERTIES.equals(name) || INDEX_GZ.equals(name)) {
+            return true;
+        }
+        Matcher matcher = CHUNK_NAME.matcher(name);
+        return matcher.matches() && remoteChunks.contains(Integer.valueOf(matcher.group(1)));
+    }
+
+    /**
+     * Returns the name of the resource the given cached file belongs to, e.g. {@code x.gz} for {@code x.gz.meta}.
+     */
+    private static String resourceName(String fileName) {
+        for (String suffix : CACHE_SUFFIXES) {
+            if (fileName.endsWith(suffix)) {
+                return fileName.substring(0, fileName.length() - suffix.length());
+            }
+        }
+        return fileName;
+    }
+
+    /**
+     * Schedules download of (at most {@code threads}) chunks which follow the given chunk number.
+     */
+    private void prefetchChunksAfter(int chunk) {
+        List<Integer> next = new ArrayList<>();
+        synchronized (remoteChunks) {
+            for (Integer c : remoteChunks.tailSet(chunk, false)) {
+                if (next.size() >= threads) {
+                    break;
+                }
+                next.add(c);
+            }
+        }
+        for (Integer c : next) {
+            prefetched.computeIfAbsent("nexus-maven-repository-index." + c + ".gz", this::download);
+        }
+    }
+
+    private Future<Path> download(String name) {
+        return executor.submit(() -> new Download(name).run());
+    }
+
+    private HttpResponse<InputStream> send(HttpRequest request) throws IOException, InterruptedException {
+        return client.send(request, HttpResponse.BodyHandlers.ofInputStream());
+    }
+
+    private long copy(InputStream body, FileChannel channel, long position) throws IOException {
+        long written = 0L;
+        try (InputStream in = body) {
+            byte[] buf = new byte[64 * 1024];
+            int read;
+            while ((read = in.read(buf)) >= 0) {
+                ByteBuffer bb = ByteBuffer.wrap(buf, 0, read);
+                while (bb.hasRemaining()) {
+                    written += channel.write(bb, position + written);
+                }
+                bytesDownloaded.addAndGet(read);
+                reportProgress(false);
+            }
+        }
+        return written;
+    }
+
+    private synchronized void reportProgress(boolean force) {
+        if (progressLog == null) {
+            return;
+        }
+        long now = System.nanoTime();
+        if (!force && now - lastProgress < PROGRESS_INTERVAL_NANOS) {
+            return;
+        }
+        lastProgress = now;
+        long bytes = bytesDownloaded.get();
+        double seconds = Math.max(1e-3, (now - progressStart) / 1e9);
+        progressLog.accept(String.format("\tDownloaded %.1f MiB (%.1f MiB/s)", bytes / 1048576.0, bytes / 1048576.0 / seconds));
+    }
+
+    /**
+     * Returns the first byte position and the total length from the {@code Content-Range} header.
+     */
+    private static long[] parseContentRange(HttpResponse<?> response) throws IOException {
+        String contentRange = response.headers().firstValue("Content-Range").orElse("");
+        Matcher matcher = CONTENT_RANGE.matcher(contentRange);
+        if (!matcher.matches()) {
+            throw new IOException("Unexpected Content-Range header: " + contentRange);
+        }
+        return new long[] { Long.parseLong(matcher.group(1)), Long.parseLong(matcher.group(2)) };
+    }
+
+    private static String digest(Path file, String algorithm) throws IOException {
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buf = ByteBuffer.allocate(64 * 1024);
+            while (channel.read(buf) >= 0) {
+                buf.flip();
+                md.update(buf);
+                buf.clear();
+            }
         }
+        return HexFormat.of().formatHex(md.digest());
+    }
 
-        @Override
-        public void disconnect() throws IOException {
+    private static Properties loadMeta(Path metaFile) throws IOException {
+        Properties meta = new Properties();
+        if (Files.isRegularFile(metaFile)) {
+            try (InputStream is = Files.newInputStream(metaFile)) {
+                meta.load(is);
+            }
+        }
+        return meta;
+    }
+
+    private static <T> T await(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Download interrupted");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException ioe) {
+                throw ioe;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * Download of a single resource into {@code <name>.part}, which is renamed to {@code <name>} once it's complete and
+     * verified. The server validators and the completed segments are tracked in {@code <name>.meta}.
+     */
+    private final class Download {
+
+        private final String name;
+        private final URI resource;
+        private final Path target;
+        private final Path part;
+        private final Path metaFile;
+        private final Properties meta;
+        private final Set<Long> doneSegments = ConcurrentHashMap.newKeySet();
+
+        Download(String name) throws IOException {
+            this.name = name;
+            this.resource = uri.resolve(name);
+            this.target = dir.resolve(name);
+            this.part = dir.resolve(name + ".part");
+            this.metaFile = dir.resolve(name + ".meta");
+            this.meta = loadMeta(metaFile);
         }
 
-        @Override
-        public InputStream retrieve(String name) throws IOException, FileNotFoundException {
-            HttpRequest request = HttpRequest.newBuilder().uri(uri.resolve(name)).GET().build();
+        Path run() throws IOException, InterruptedException {
+            String etag = meta.getProperty(META_ETAG);
+            String lastModified = meta.getProperty(META_LAST_MODIFIED);
+            String validator = rangeValidator();
+            if (Files.isRegularFile(target) && (etag != null || lastModified != null)) {
+                HttpRequest.Builder request = rangeRequest(0L, segmentSize);
+                if (etag != null) {
+                    request.header("If-None-Match", etag);
+                }
+                if (lastModified != null) {
+                    request.header("If-Modified-Since", lastModified);
+                }
+                return fetch(request.build(), false);
+            }
+            if (validator != null && Files.isRegularFile(part) && meta.getProperty(META_LENGTH) != null
+                    && Long.toString(segmentSize).equals(meta.getProperty(META_SEGMENT_SIZE))) {
+                long length = Long.parseLong(meta.getProperty(META_LENGTH));
+                for (String segment : meta.getProperty(META_SEGMENTS, "").split(",")) {
+                    if (!segment.isEmpty()) {
+                        doneSegments.add(Long.valueOf(segment));
+                    }
+                }
+                long missing = 0L;
+                while (doneSegments.contains(missing)) {
+                    missing++;
+                }
+                if (missing * segmentSize >= length) {
+                    return complete();
+                }
+                return fetch(rangeRequest(missing * segmentSize, length).header("If-Range", validator).build(), true);
+            }
+            return fetch(rangeRequest(0L, segmentSize).build(), false);
+        }
+
+        private Path fetch(HttpRequest request, boolean resuming) throws IOException, InterruptedException {
+            boolean notModified = false;
+            try (FileChannel channel = FileChannel.open(part, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                List<Future<Long>> segments = new ArrayList<>();
+                permits.acquire();
+                try {
+                    HttpResponse<InputStream> response = send(request);
+                    int status = response.statusCode();
+                    if (status == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                        response.body().close();
+                        notModified = true;
+                    } else if (status == HttpURLConnection.HTTP_PARTIAL) {
+                        long[] range = parseContentRange(response);
+                        long total = range[1];
+                        if (!resuming) {
+                            restart(response, channel, total);
+                        }
+                        copy(response.body(), channel, range[0]);
+                        segmentDone(range[0] / segmentSize);
+                        for (long segment = 0; segment * segmentSize < total; segment++) {
+                            if (!doneSegments.contains(segment)) {
+                                long index = segment;
+                                segments.add(executor.submit(() -> downloadSegment(channel, index, total)));
+                            }
+                        }
+                    } else if (status == HTTP_RANGE_NOT_SATISFIABLE) {
+                        // empty resource
+                        response.body().close();
+                        restart(response, channel, 0L);
+                    } else if (status == HttpURLConnection.HTTP_OK) {
+                        restart(response, channel, -1L);
+                        copy(response.body(), channel, 0L);
+                    } else {
+                        response.body().close();
+                        throw status == HttpURLConnection.HTTP_NOT_FOUND ? new FileNotFoundException(resource.toString())
+                                : new IOException("Unexpected response: " + response);
+                    }
+                } finally {
+                    permits.release();
+                }
+                for (Future<Long> segment : segments) {
+                    await(segment);
+                }
+            }
+            if (notModified) {
+                Files.deleteIfExists(part);
+                return target;
+            }
+            return complete();
+        }
+
+        private long downloadSegment(FileChannel channel, long index, long total) throws IOException, InterruptedException {
+            long from = index * segmentSize;
+            HttpRequest.Builder request = rangeRequest(from, total);
+            String validator = rangeValidator();
+            if (validator != null) {
+                request.header("If-Range", validator);
+            }
+            permits.acquire();
             try {
-                HttpResponse<InputStream> response = client.send(request, HttpResponse.BodyHandlers.ofInputStream());
-                if (response.statusCode() == HttpURLConnection.HTTP_OK) {
-                    return response.body();
-                } else {
-                    throw new IOException("Unexpected response: " + response);
+                HttpResponse<InputStream> response = send(request.build());
+                if (response.statusCode() != HttpURLConnection.HTTP_PARTIAL) {
+                    response.body().close();
+                    throw new IOException("Unexpected response to a range request: " + response);
+                }
+                long written = copy(response.body(), channel, from);
+                segmentDone(index);
+                return written;
+            } finally {
+                permits.release();
+            }
+        }
+
+        /**
+         * Drops the previously downloaded data and remembers the validators of the new response.
+         */
+        private void restart(HttpResponse<?> response, FileChannel channel, long total) throws IOException {
+            Files.deleteIfExists(target);
+            channel.truncate(0L);
+            doneSegments.clear();
+            synchronized (meta) {
+                meta.clear();
+                response.headers().firstValue("ETag").ifPresent(v -> meta.setProperty(META_ETAG, v));
+                response.headers().firstValue("Last-Modified").ifPresent(v -> meta.setProperty(META_LAST_MODIFIED, v));
+                if (total >= 0) {
+                    meta.setProperty(META_LENGTH, Long.toString(total));
+                    meta.setProperty(META_SEGMENT_SIZE, Long.toString(segmentSize));
+                }
+            }
+            saveMeta();
+        }
+
+        private void segmentDone(long index) throws IOException {
+            doneSegments.add(index);
+            synchronized (meta) {
+                meta.setProperty(META_SEGMENTS,
+                        doneSegments.stream().sorted().map(String::valueOf).collect(Collectors.joining(",")));
+            }
+            saveMeta();
+        }
+
+        private Path complete() throws IOException, InterruptedException {
+            verifyChecksum();
+            Files.move(part, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            synchronized (meta) {
+                meta.remove(META_SEGMENTS);
+                meta.remove(META_SEGMENT_SIZE);
+            }
+            saveMeta();
+            return target;
+        }
+
+        private void verifyChecksum() throws IOException, InterruptedException {
+            for (String extension : CHECKSUM_EXTENSIONS) {
+                String expected = fetchChecksum(name + "." + extension);
+                if (expected == null) {
+                    continue;
+                }
+                String actual = digest(part, "sha1".equals(extension) ? "SHA-1" : "MD5");
+                if (!actual.equalsIgnoreCase(expected)) {
+                    Files.deleteIfExists(part);
+                    Files.deleteIfExists(metaFile);
+                    throw new IOException("Checksum mismatch for " + resource + " (" + extension + " expected: " + expected
+                            + ", actual: " + actual + ")");
+                }
+                return;
+            }
+        }
+
+        private String fetchChecksum(String checksumName) throws IOException, InterruptedException {
+            permits.acquire();
+            try {
+                HttpResponse<InputStream> response = send(HttpRequest.newBuilder().uri(uri.resolve(checksumName)).GET().build());
+                try (InputStream is = response.body()) {
+                    if (response.statusCode() != HttpURLConnection.HTTP_OK) {
+                        return null;
+                    }
+                    String[] tokens = new String(is.readAllBytes(), StandardCharsets.US_ASCII).trim().split("\\s+");
+                    return tokens[0].isEmpty() ? null : tokens[0];
+                }
+            } finally {
+                permits.release();
+            }
+        }
+
+        /**
+         * Returns the validator usable in the {@code If-Range} header. Weak entity tags are not allowed there.
+         */
+        private String rangeValidator() {
+            synchronized (meta) {
+                String etag = meta.getProperty(META_ETAG);
+                return etag != null && !etag.startsWith("W/") ? etag : meta.getProperty(META_LAST_MODIFIED);
+            }
+        }
+
+        private HttpRequest.Builder rangeRequest(long from, long limit) {
+            long to = Math.min(from + segmentSize, limit) - 1;
+            return HttpRequest.newBuilder().uri(resource).header("Range", "bytes=" + from + "-" + to).GET();
+        }
+
+        private void saveMeta() throws IOException {
+            Path tmp = dir.resolve(name + ".meta.tmp");
+            synchronized (meta) {
+                try (OutputStream os = Files.newOutputStream(tmp)) {
+                    meta.store(os, null);
                 }
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                throw new IOException(e);
+                Files.move(tmp, metaFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
             }
         }
-    }
\ No newline at end of file
+    }
+}
@@ -0,0 +1,136 @@
+package com.github.kwart.mvnquery;
+
+import static com.github.kwart.mvnquery.CustomArtifactInfoIndexCreator.DV_ARTIFACT_ID;
+import static com.github.kwart.mvnquery.CustomArtifactInfoIndexCreator.DV_CLASSIFIER;
+import static com.github.kwart.mvnquery.CustomArtifactInfoIndexCreator.DV_GROUP_ID;
+import static com.github.kwart.mvnquery.CustomArtifactInfoIndexCreator.DV_VERSION_KEY;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
+
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.SortedDocValues;
+import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.SimpleCollector;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefBuilder;
+import org.apache.lucene.util.BytesRefHash;
+
+/**
+ * Collects the hit with the highest version (see {@link VersionKey}) of each groupId:artifactId in a single pass. Only a
+ * compact accumulator is kept per GA: the GA bytes, an id of the (shared) version key and the document location. When
+ * more hits have the highest version, the one without a classifier wins.
+ */
+class LatestVersionCollector extends SimpleCollector {
+
+    private final int shard;
+    private final BytesRefHash gas = new BytesRefHash();
+    private final BytesRefHash versions = new BytesRefHash();
+    private final BytesRefBuilder key = new BytesRefBuilder();
+    private final BytesRef scratch = new BytesRef();
+    private final BitSet withClassifier = new BitSet();
+
+    private int[] bestVersion = new int[16];
+    private int[] bestShard = new int[16];
+    private int[] bestDoc = new int[16];
+
+    private SortedDocValues groupIds;
+    private SortedDocValues artifactIds;
+    private SortedDocValues versionKeys;
+    private SortedDocValues classifiers;
+    private int docBase;
+    private long hits;
+
+    /**
+     * @param shard index of the searched repository, it's returned as part of the hit location
+     */
+    LatestVersionCollector(int shard) {
+        this.shard = shard;
+    }
+
+    @Override
+    protected void doSetNextReader(LeafReaderContext context) throws IOException {
+        LeafReader reader = context.reader();
+        docBase = context.docBase;
+        groupIds = DocValues.getSorted(reader, DV_GROUP_ID);
+        artifactIds = DocValues.getSorted(reader, DV_ARTIFACT_ID);
+        versionKeys = DocValues.getSorted(reader, DV_VERSION_KEY);
+        classifiers = DocValues.getSorted(reader, DV_CLASSIFIER);
+    }
+
+    @Override
+    public void collect(int doc) throws IOException {
+        hits++;
+        if (!groupIds.advanceExact(doc) || !artifactIds.advanceExact(doc) || !versionKeys.advanceExact(doc)) {
+            return;
+        }
+        key.clear();
+        key.append(groupIds.lookupOrd(groupIds.ordValue()));
+        key.append((byte) 0);
+        key.append(artifactIds.lookupOrd(artifactIds.ordValue()));
+        offer(key.get(), versionKeys.lookupOrd(versionKeys.ordValue()), classifiers.advanceExact(doc), shard, docBase + doc);
+    }
+
+    @Override
+    public ScoreMode scoreMode() {
+        return ScoreMode.COMPLETE_NO_SCORES;
+    }
+
+    long getHitCount() {
+        return hits;
+    }
+
+    /**
+     * Adds the GAs collected by another collector (e.g. from another repository) to this one.
+     */
+    void merge(LatestVersionCollector other) {
+        BytesRef ga = new BytesRef();
+        BytesRef version = new BytesRef();
+        for (int id = 0; id < other.gas.size(); id++) {
+            other.gas.get(id, ga);
+            other.versions.get(other.bestVersion[id], version);
+            offer(ga, version, other.withClassifier.get(id), other.bestShard[id], other.bestDoc[id]);
+        }
+        hits += other.hits;
+    }
+
+    /**
+     * Returns locations of the collected hits as {@code shard << 32 | doc} values in ascending order (i.e. in the index
+     * order of each repository).
+     */
+    long[] getLatestHits() {
+        long[] result = new long[gas.size()];
+        for (int id = 0; id < result.length; id++) {
+            result[id] = ((long) bestShard[id] << 32) | bestDoc[id];
+        }
+        Arrays.sort(result);
+        return result;
+    }
+
+    private void offer(BytesRef ga, BytesRef version, boolean hasClassifier, int hitShard, int hitDoc) {
+        int id = gas.add(ga);
+        if (id >= 0) {
+            if (id == bestDoc.length) {
+                int size = ArrayUtil.oversize(id + 1, Integer.BYTES);
+                bestVersion = ArrayUtil.growExact(bestVersion, size);
+                bestShard = ArrayUtil.growExact(bestShard, size);
+                bestDoc = ArrayUtil.growExact(bestDoc, size);
+            }
+        } else {
+            id = -id - 1;
+            int cmp = version.compareTo(versions.get(bestVersion[id], scratch));
+            if (cmp < 0 || (cmp == 0 && (hasClassifier || !withClassifier.get(id)))) {
+                return;
+            }
+        }
+        int versionId = versions.add(version);
+        bestVersion[id] = versionId >= 0 ? versionId : -versionId - 1;
+        bestShard[id] = hitShard;
+        bestDoc[id] = hitDoc;
+        withClassifier.set(id, hasClassifier);
+    }
+}
@@ -0,0 +1,151 @@
+package com.github.kwart.mvnquery;
+
+import java.math.BigDecimal;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Timers (nanosecond histograms) and counters describing where MvnQuery spends its time. The metrics can be rendered as
+ * JSON or in the Prometheus text exposition format.
+ */
+public class Metrics {
+
+    static final Set<String> FORMATS = Set.of("json", "prometheus");
+
+    /**
+     * Upper bounds of the histogram buckets in nanoseconds (1 µs to 100 s).
+     */
+    private static final long[] BUCKETS_NANOS = { 1_000L, 10_000L, 100_000L, 1_000_000L, 10_000_000L, 100_000_000L,
+            1_000_000_000L, 10_000_000_000L, 100_000_000_000L };
+
+    private final Map<String, Timer> timers = new ConcurrentSkipListMap<>();
+    private final Map<String, LongAdder> counters = new ConcurrentSkipListMap<>();
+
+    /**
+     * Returns the timer with the given name (it's created when it doesn't exist yet).
+     */
+    public Timer timer(String name) {
+        return timers.computeIfAbsent(name, n -> new Timer());
+    }
+
+    /**
+     * Adds the given value to the counter with the given name.
+     */
+    public void count(String name, long delta) {
+        counters.computeIfAbsent(name, n -> new LongAdder()).add(delta);
+    }
+
+    /**
+     * Renders the metrics in the given format ({@code json} or {@code prometheus}).
+     *
+     * @throws IllegalArgumentException when the format is not supported
+     */
+    public String render(String format) {
+        switch (format.toLowerCase(Locale.ROOT)) {
+            case "json":
+                return toJson();
+            case "prometheus":
+                return toPrometheus();
+            default:
+                throw new IllegalArgumentException("Unsupported metrics format: " + format + " (use json or prometheus)");
+        }
+    }
+
+    public String toJson() {
+        StringBuilder sb = new StringBuilder("{\n  \"timers\": {");
+        String separator = "\n";
+        for (Map.Entry<String, Timer> entry : timers.entrySet()) {
+            Timer timer = entry.getValue();
+            sb.append(separator).append("    \"").append(entry.getKey()).append("\": {\"count\": ").append(timer.count.sum())
+                    .append(", \"sumNanos\": ").append(timer.sum.sum()).append(", \"maxNanos\": ").append(timer.max.get())
+                    .append(", \"buckets\": {");
+            for (int i = 0; i <= BUCKETS_NANOS.length; i++) {
+                sb.append(i > 0 ? ", " : "").append('"').append(i < BUCKETS_NANOS.length ? Long.toString(BUCKETS_NANOS[i]) : "+Inf")
+                        .append("\": ").append(timer.cumulativeCount(i));
+            }
+            sb.append("}}");
+            separator = ",\n";
+        }
+        sb.append("\n  },\n  \"counters\": {");
+        separator = "\n";
+        for (Map.Entry<String, LongAdder> entry : counters.entrySet()) {
+            sb.append(separator).append("    \"").append(entry.getKey()).append("\": ").append(entry.getValue().sum());
+            separator = ",\n";
+        }
+        return sb.append("\n  }\n}\n").toString();
+    }
+
+    public String toPrometheus() {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, Timer> entry : timers.entrySet()) {
+            String name = "mvnquery_" + entry.getKey() + "_seconds";
+            Timer timer = entry.getValue();
+            sb.append("# TYPE ").append(name).append(" histogram\n");
+            for (int i = 0; i <= BUCKETS_NANOS.length; i++) {
+                sb.append(name).append("_bucket{le=\"").append(i < BUCKETS_NANOS.length ? seconds(BUCKETS_NANOS[i]) : "+Inf")
+                        .append("\"} ").append(timer.cumulativeCount(i)).append('\n');
+            }
+            sb.append(name).append("_sum ").append(seconds(timer.sum.sum())).append('\n');
+            sb.append(name).append("_count ").append(timer.count.sum()).append('\n');
+        }
+        for (Map.Entry<String, LongAdder> entry : counters.entrySet()) {
+            String name = "mvnquery_" + entry.getKey() + "_total";
+            sb.append("# TYPE ").append(name).append(" counter\n");
+            sb.append(name).append(' ').append(entry.getValue().sum()).append('\n');
+        }
+        return sb.toString();
+    }
+
+    private static String seconds(long nanos) {
+        return BigDecimal.valueOf(nanos, 9).stripTrailingZeros().toPlainString();
+    }
+
+    /**
+     * Histogram of durations in nanoseconds.
+     */
+    public static final class Timer {
+
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sum = new LongAdder();
+        private final AtomicLong max = new AtomicLong();
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS_NANOS.length + 1);
+
+        private Timer() {
+        }
+
+        /**
+         * Records the time elapsed since the given {@link System#nanoTime()} value.
+         */
+        public void stop(long startNanos) {
+            record(System.nanoTime() - startNanos);
+        }
+
+        public void record(long nanos) {
+            int bucket = 0;
+            while (bucket < BUCKETS_NANOS.length && nanos > BUCKETS_NANOS[bucket]) {
+                bucket++;
+            }
+            buckets.incrementAndGet(bucket);
+            count.increment();
+            sum.add(nanos);
+            max.accumulateAndGet(nanos, Math::max);
+        }
+
+        long getCount() {
+            return count.sum();
+        }
+
+        private long cumulativeCount(int bucket) {
+            long result = 0L;
+            for (int i = 0; i <= bucket; i++) {
+                result += buckets.get(i);
+            }
+            return result;
+        }
+    }
+}
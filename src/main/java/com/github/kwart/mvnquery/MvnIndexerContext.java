@@ -1,23 +1,43 @@
 package com.github.kwart.mvnquery;
 
-import javax.inject.Inject;
-import javax.inject.Named;
-import javax.inject.Singleton;
+import java.util.List;
 
+import org.apache.maven.index.DefaultIndexer;
+import org.apache.maven.index.DefaultIndexerEngine;
+import org.apache.maven.index.DefaultQueryCreator;
+import org.apache.maven.index.DefaultSearchEngine;
 import org.apache.maven.index.Indexer;
+import org.apache.maven.index.incremental.DefaultIncrementalHandler;
+import org.apache.maven.index.updater.DefaultIndexUpdater;
+import org.apache.maven.index.updater.IndexUpdateSideEffect;
 import org.apache.maven.index.updater.IndexUpdater;
 
-@Singleton
-@Named
 public final class MvnIndexerContext {
 
     protected final Indexer indexer;
     protected final IndexUpdater indexUpdater;
 
-    @Inject
     public MvnIndexerContext(Indexer indexer, IndexUpdater indexUpdater) {
         this.indexer = indexer;
         this.indexUpdater = indexUpdater;
     }
 
+    /**
+     * Creates the context with the default maven-indexer components wired explicitly. There is no dependency injection
+     * container, scanning the classpath for the named components would dominate the startup time of short queries.
+     */
+    public static MvnIndexerContext create() {
+        return create(List.of());
+    }
+
+    /**
+     * Creates the context with the default components and an index updater which calls the given side effects for every
+     * applied index update.
+     */
+    public static MvnIndexerContext create(List<IndexUpdateSideEffect> sideEffects) {
+        Indexer indexer = new DefaultIndexer(new DefaultSearchEngine(), new DefaultIndexerEngine(), new DefaultQueryCreator());
+        IndexUpdater indexUpdater = new DefaultIndexUpdater(new DefaultIncrementalHandler(), sideEffects);
+        return new MvnIndexerContext(indexer, indexUpdater);
+    }
+
 }
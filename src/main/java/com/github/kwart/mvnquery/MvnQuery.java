@@ -2,14 +2,28 @@ package com.github.kwart.mvnquery;
 
 import static java.util.Objects.requireNonNull;
 
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.PrintStream;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.security.MessageDigest;
 import java.time.Duration;
 import java.time.Instant;
@@ -18,41 +32,67 @@ import java.time.format.DateTimeFormatter;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
 import java.util.Base64;
-import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Objects;
+import java.util.PriorityQueue;
 import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.LogManager;
+import java.util.stream.Stream;
 
 import org.apache.lucene.document.LongPoint;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.PostingsEnum;
+import org.apache.lucene.index.ReaderUtil;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
 import org.apache.lucene.search.BooleanClause.Occur;
 import org.apache.lucene.search.BooleanQuery;
 import org.apache.lucene.search.BooleanQuery.Builder;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.FieldExistsQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.search.TermInSetQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.TopFieldDocs;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefBuilder;
 import org.apache.lucene.util.Constants;
 import org.apache.maven.index.ArtifactInfo;
 import org.apache.maven.index.Field;
 import org.apache.maven.index.Indexer;
-import org.apache.maven.index.IteratorSearchRequest;
-import org.apache.maven.index.IteratorSearchResponse;
 import org.apache.maven.index.MAVEN;
 import org.apache.maven.index.context.ExistingLuceneIndexMismatchException;
 import org.apache.maven.index.context.IndexCreator;
 import org.apache.maven.index.context.IndexingContext;
+import org.apache.maven.index.creator.MinimalArtifactInfoIndexCreator;
 import org.apache.maven.index.expr.SourcedSearchExpression;
 import org.apache.maven.index.updater.IndexUpdateRequest;
 import org.apache.maven.index.updater.IndexUpdateResult;
 import org.apache.maven.index.updater.IndexUpdater;
 import org.eclipse.aether.version.InvalidVersionSpecificationException;
-import org.eclipse.sisu.launch.Main;
-import org.eclipse.sisu.space.BeanScanning;
 import org.slf4j.bridge.SLF4JBridgeHandler;
 
 import com.beust.jcommander.JCommander;
 import com.beust.jcommander.internal.DefaultConsole;
-import com.google.inject.Guice;
-import com.google.inject.Injector;
 
 /**
  * Query Maven Index. See
@@ -63,17 +103,23 @@ public class MvnQuery {
     private static final String PROP_LAST_UPDATE_TIMESTAMP = "last.update.timestamp";
     private static final String PROP_UPDATE_INTERVAL_HOURS = "update.interval.hours";
     private static final String PROP_REPOSITORY_URL = "repository.url";
+    private static final String PROP_INDEX_LAYOUT = "index.layout";
+    private static final String PROP_INDEX_GENERATION = "index.generation";
+    private static final String PROP_CLASS_INDEX = "index.classes";
+    private static final String PROP_INGEST_GROUPS = "ingest.groups";
 
     private static final String FILENAME_INDEX_PROPERTIES = "index.properties";
+    private static final String FILENAME_UPDATE_LOCK = "update.lock";
 
     public static final String VERSION;
 
     private final Indexer indexer;
     private final IndexUpdater indexUpdater;
     private final Config config;
-    private final DateTimeFormatter timestampFormatter;
     private final PrintStream resultStream;
     private final PrintStream infoStream;
+    private final Metrics metrics = new Metrics();
+    private final ChangesJournal changesJournal = new ChangesJournal();
 
     public MvnQuery(Config config) throws Exception {
         this(config, System.out, System.err);
@@ -83,17 +129,53 @@ public class MvnQuery {
         this.config = requireNonNull(config);
         this.infoStream = requireNonNull(infoStream);
         this.resultStream = requireNonNull(resultStream);
-        String tf = config.getTimestampFormat();
-        if (tf != null) {
-            timestampFormatter = "ISO".equals(tf.toUpperCase(Locale.ROOT)) ? DateTimeFormatter.ISO_INSTANT
-                    : DateTimeFormatter.ofPattern(tf).withZone(ZoneId.systemDefault());
-        } else {
-            timestampFormatter = null;
+        validateQuery(config);
+        if (SummaryCollector.isSummary(config) && (config.getBatch() != null || config.getChanges() != null)) {
+            throw new IllegalArgumentException("The --count and --facet options can't be used with --batch or --changes");
+        }
+        if (config.getDistinct() != null) {
+            DistinctTerms.isGroupIdListing(config);
+            if (config.getBatch() != null || config.getChanges() != null || SummaryCollector.isSummary(config)) {
+                throw new IllegalArgumentException(
+                        "The --distinct option can't be used with --batch, --changes, --count or --facet");
+            }
+            // the listing walks the groupId and artifactId terms only, the defaults of the other filters are ignored
+            Config defaults = new Config();
+            if (config.getArtifactVersion() != null || config.getVersionRange() != null
+                    || isFilterSet(config.getPackaging(), defaults.getPackaging())
+                    || isFilterSet(config.getClassifier(), defaults.getClassifier())
+                    || config.getLastDays() != 0 && config.getLastDays() != defaults.getLastDays()) {
+                throw new IllegalArgumentException("The --distinct option can't be used with --artifact-version, "
+                        + "--version-range, --packaging, --classifier or --lastDays");
+            }
+        }
+        if (config.getIdentify() != null && (config.getBatch() != null || config.getChanges() != null
+                || SummaryCollector.isSummary(config) || config.getDistinct() != null || config.isDedup())) {
+            throw new IllegalArgumentException(
+                    "The --identify option can't be used with --batch, --changes, --count, --facet, --distinct or --dedup");
         }
-        Injector injector = Guice.createInjector(Main.wire(BeanScanning.CACHE));
-        MvnIndexerContext ctx = injector.getInstance(MvnIndexerContext.class);
+        if (config.getClassName() != null && (config.getBatch() != null || config.getChanges() != null
+                || config.getDistinct() != null || config.getIdentify() != null)) {
+            throw new IllegalArgumentException(
+                    "The --class option can't be used with --batch, --changes, --distinct or --identify");
+        }
+        if (config.getMetrics() != null && !Metrics.FORMATS.contains(config.getMetrics().toLowerCase(Locale.ROOT))) {
+            throw new IllegalArgumentException(
+                    "Unsupported metrics format: " + config.getMetrics() + " (use json or prometheus)");
+        }
+        if (config.getChanges() != null) {
+            ChangesJournal.checkpointProperty(config.getChanges());
+            if (config.isReadOnly()) {
+                // the checkpoint is stored in the data directory and the feed relies on the index updates
+                throw new IllegalArgumentException("The --changes option can't be used with --read-only");
+            }
+        }
+        IngestFilter.parse(config.getIngestGroups());
+        long start = System.nanoTime();
+        MvnIndexerContext ctx = MvnIndexerContext.create(List.of(changesJournal));
         this.indexer = ctx.indexer;
         this.indexUpdater = ctx.indexUpdater;
+        metrics.timer("bootstrap").stop(start);
     }
 
     public static void main(String args[]) throws Exception {
@@ -124,70 +206,864 @@ public class MvnQuery {
 
     public void perform() throws IOException, InvalidVersionSpecificationException {
         log("Use --quiet (-q) argument to supress the debug output. Use --help (-h) to print the help.\n");
-        IndexingContext indexingContext = initIndexingContext();
-        updateIndex(indexingContext);
-        BooleanQuery query = buildQuery();
-        runQuery(indexingContext, query);
-        indexer.closeIndexingContext(indexingContext, false);
+        if (config.isRefresh()) {
+            refreshIndexes();
+            return;
+        }
+        List<BatchQuery> batch = config.getBatch() != null ? readBatch() : null;
+        List<Path> identifyFiles = config.getIdentify() != null ? readIdentifyFiles() : null;
+        List<RepositoryIndex> indexes = prepareIndex();
+        if (config.getServerPort() > 0) {
+            QueryServer server = startServer(indexes);
+            Runtime.getRuntime().addShutdownHook(new Thread(server::close));
+            log("Query server listening on http://localhost:" + server.getPort() + "/query");
+            return;
+        }
+        if (batch != null) {
+            runBatch(indexes, batch, resultStream);
+        } else if (config.getChanges() != null) {
+            queryChanges(indexes, resultStream);
+        } else if (identifyFiles != null) {
+            identify(indexes, identifyFiles, resultStream);
+        } else if (config.getDistinct() != null) {
+            listDistinct(indexes, resultStream);
+        } else {
+            query(indexes, config, resultStream);
+        }
+        closeIndexes(indexes);
+        if (config.getMetrics() != null) {
+            // printed even in the quiet mode, it was explicitly requested
+            infoStream.print(metrics.render(config.getMetrics()));
+        }
+    }
+
+    private List<BatchQuery> readBatch() throws IOException {
+        if ("-".equals(config.getBatch())) {
+            return BatchQuery.read(new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8)), config);
+        }
+        try (BufferedReader reader = Files.newBufferedReader(Path.of(config.getBatch()))) {
+            return BatchQuery.read(reader, config);
+        }
+    }
+
+    private List<Path> readIdentifyFiles() throws IOException {
+        if ("-".equals(config.getIdentify())) {
+            return FileChecksums.read(new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8)));
+        }
+        return FileChecksums.list(Path.of(config.getIdentify()));
+    }
+
+    /**
+     * Opens the indexes of the configured repositories and updates them when needed. More repositories are updated
+     * concurrently.
+     */
+    List<RepositoryIndex> prepareIndex() throws IOException {
+        List<String> repos = config.getConfigRepos().stream().distinct().toList();
+        if (repos.size() == 1) {
+            return List.of(prepareIndex(repos.get(0)));
+        }
+        List<RepositoryIndex> indexes = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<RepositoryIndex>> futures = new ArrayList<>();
+            for (String repo : repos) {
+                futures.add(executor.submit(() -> prepareIndex(repo)));
+            }
+            IOException failure = null;
+            for (Future<RepositoryIndex> future : futures) {
+                try {
+                    indexes.add(await(future));
+                } catch (IOException e) {
+                    failure = e;
+                }
+            }
+            if (failure != null) {
+                closeIndexes(indexes);
+                throw failure;
+            }
+        }
+        return indexes;
+    }
+
+    /**
+     * Starts the query server on the configured port. The server owns the given indexes and closes them when the server is
+     * closed.
+     */
+    QueryServer startServer(List<RepositoryIndex> indexes) throws IOException {
+        QueryServer server = new QueryServer(this, indexes, config.getServerPort());
+        server.start();
+        return server;
+    }
+
+    /**
+     * Runs a single query described by the filters in the given {@link Config} against already opened indexes.
+     */
+    void query(List<RepositoryIndex> indexes, Config queryConfig, OutputStream out) throws IOException {
+        BooleanQuery query = addClassFilter(indexes, buildQuery(queryConfig), queryConfig);
+        String cacheKey = config.getCacheSize() > 0 ? ResultCache.key(query, queryConfig, indexes) : null;
+        if (cacheKey == null) {
+            runQuery(indexes, query, queryConfig, out);
+            return;
+        }
+        // the entries of queries over more repositories are kept in the first one
+        ResultCache cache = new ResultCache(indexes.get(0).getIndexDirectoryFile().getParentFile(),
+                config.getCacheSize() * 1024L * 1024L);
+        if (cache.copyTo(cacheKey, out)) {
+            metrics.count("cache_hits", 1L);
+            log("Result served from the cache");
+            return;
+        }
+        metrics.count("cache_misses", 1L);
+        try (ResultCache.Capture capture = cache.capture(cacheKey, out)) {
+            runQuery(indexes, query, queryConfig, capture);
+            capture.commit();
+        }
+    }
+
+    /**
+     * Runs the batch queries on a bounded executor and writes the rows tagged by the query ids. Exact groupId:artifactId
+     * lookups which share the other filters are merged into a single query.
+     */
+    void runBatch(List<RepositoryIndex> indexes, List<BatchQuery> queries, OutputStream out) throws IOException {
+        log("Running " + queries.size() + " batch queries");
+        log("------");
+        Instant searchStart = Instant.now();
+        long start = System.nanoTime();
+        Map<List<Object>, List<BatchQuery>> gaLookups = new LinkedHashMap<>();
+        List<BatchQuery> otherQueries = new ArrayList<>();
+        for (BatchQuery query : queries) {
+            if (query.isGaLookup()) {
+                gaLookups.computeIfAbsent(query.getOtherFilters(), k -> new ArrayList<>()).add(query);
+            } else {
+                otherQueries.add(query);
+            }
+        }
+        ResultWriter writer = ResultWriter.create(out, config);
+        long hits = 0L;
+        try (ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors())) {
+            List<Future<Long>> futures = new ArrayList<>();
+            for (List<BatchQuery> lookups : gaLookups.values()) {
+                futures.add(executor.submit(() -> searchGaLookups(indexes, lookups, writer)));
+            }
+            for (BatchQuery query : otherQueries) {
+                futures.add(executor.submit(() -> searchAll(indexes,
+                        addClassFilter(indexes, createQuery(query.getConfig(), null), query.getConfig()),
+                        query.getConfig(), writer, query.getId())));
+            }
+            for (Future<Long> future : futures) {
+                hits += await(future);
+            }
+        }
+        writer.flush();
+        metrics.timer("search").stop(start);
+        metrics.count("hits", hits);
+        metrics.count("rows", writer.getRowCount());
+        log("------");
+        log("Merged GA lookups: " + (queries.size() - otherQueries.size()) + " into " + gaLookups.size() + " queries");
+        log("Total response size: " + hits);
+        log("Artifacts listed: " + writer.getRowCount());
+        log("Batch took " + Duration.between(searchStart, Instant.now()).getSeconds() + " seconds");
+        log();
     }
 
-    private void runQuery(IndexingContext indexingContext, BooleanQuery query) throws IOException {
+    /**
+     * Writes the artifacts from the index chunks applied since the checkpoint of the configured changes feed consumer and
+     * moves the checkpoint. The rows are selected from the index by the recorded UINFO values, so the work is proportional
+     * to the number of changes, and the query filters (except {@code --lastDays}) are applied to them.
+     */
+    void queryChanges(List<RepositoryIndex> indexes, OutputStream out) throws IOException {
+        String checkpointProperty = ChangesJournal.checkpointProperty(config.getChanges());
+        // the changes are selected by the checkpoint, not by the wall-clock time
+        Config queryConfig = Config.parseQueryArgs(List.of("--lastDays", "0"), config);
+        log("Querying changes for " + config.getChanges());
+        log("------");
+        Instant searchStart = Instant.now();
+        ResultWriter writer = ResultWriter.create(out, queryConfig);
+        long start = System.nanoTime();
+        long hits = 0L;
+        for (int i = 0; i < indexes.size(); i++) {
+            RepositoryIndex index = indexes.get(i);
+            File repoDir = index.getIndexDirectoryFile().getParentFile();
+            long sequence;
+            Set<BytesRef> uinfos = null;
+            // only the feed state is read under the update lock, a slow consumer of the rows mustn't block the updates
+            try (FileChannel lockChannel = openUpdateLock(repoDir); FileLock lock = lockChannel.lock()) {
+                Properties props = loadProperties(repoDir);
+                if (!index.getIndexDirectoryFile().equals(indexDir(repoDir, getGeneration(props)))) {
+                    log("\tSkipping " + index.getRepositoryUrl()
+                            + " (a refreshed index was published meanwhile, run the query again)");
+                    continue;
+                }
+                sequence = ChangesJournal.getSequence(props);
+                if (props.getProperty(checkpointProperty) == null) {
+                    log("\tNew consumer of " + index.getRepositoryUrl()
+                            + " changes, they are recorded from the next index update");
+                } else {
+                    long from = ChangesJournal.getLong(props, checkpointProperty);
+                    if (from < ChangesJournal.getBase(props)) {
+                        log("\tWARNING: a full index update of " + index.getRepositoryUrl()
+                                + " happened since the last checkpoint, some changes may be missing");
+                    }
+                    uinfos = ChangesJournal.read(repoDir, from, sequence);
+                    log("\t" + index.getRepositoryUrl() + ": " + uinfos.size() + " changes since checkpoint " + from);
+                }
+            }
+            if (uinfos != null && !uinfos.isEmpty()) {
+                BooleanQuery query = new BooleanQuery.Builder().add(createQuery(queryConfig, null), Occur.MUST)
+                        .add(new TermInSetQuery(ArtifactInfo.UINFO, uinfos), Occur.MUST).build();
+                hits += searchAll(List.of(index), query, queryConfig, writer, tag(null, indexes, i));
+            }
+            // the rows have to be written before the checkpoint moves
+            writer.flush();
+            try (FileChannel lockChannel = openUpdateLock(repoDir); FileLock lock = lockChannel.lock()) {
+                // reloaded, the properties may have been changed by an index update meanwhile
+                Properties props = loadProperties(repoDir);
+                if (props.getProperty(checkpointProperty) == null
+                        || ChangesJournal.getLong(props, checkpointProperty) < sequence) {
+                    props.setProperty(checkpointProperty, Long.toString(sequence));
+                    storeProperties(repoDir, props);
+                }
+            }
+        }
+        metrics.timer("search").stop(start);
+        metrics.count("hits", hits);
+        metrics.count("rows", writer.getRowCount());
+        log("------");
+        log("Total response size: " + hits);
+        log("Artifacts listed: " + writer.getRowCount());
+        log("Query took " + Duration.between(searchStart, Instant.now()).getSeconds() + " seconds");
+        log();
+    }
+
+    /**
+     * Writes the distinct groupIds or groupId:artifactId pairs (see {@link DistinctTerms}) in the sorted order. The values
+     * of more repositories are merged, so each value is written once.
+     */
+    void listDistinct(List<RepositoryIndex> indexes, OutputStream out) throws IOException {
+        log("Listing distinct " + config.getDistinct() + " values");
+        log("------");
+        Instant searchStart = Instant.now();
+        long start = System.nanoTime();
+        long rows = 0L;
+        IndexSearcher[] searchers = new IndexSearcher[indexes.size()];
+        try {
+            PriorityQueue<DistinctTerms> queue = new PriorityQueue<>(DistinctTerms.ORDER);
+            for (int i = 0; i < searchers.length; i++) {
+                searchers[i] = indexes.get(i).acquireIndexSearcher();
+                DistinctTerms terms = DistinctTerms.open(searchers[i].getIndexReader(), config);
+                if (terms.next()) {
+                    queue.add(terms);
+                }
+            }
+            OutputStream buffered = new BufferedOutputStream(out);
+            BytesRefBuilder lastGroupId = new BytesRefBuilder();
+            BytesRefBuilder lastArtifactId = new BytesRefBuilder();
+            while (!queue.isEmpty()) {
+                DistinctTerms terms = queue.poll();
+                BytesRef artifactId = terms.artifactId();
+                if (rows == 0L || !terms.groupId().bytesEquals(lastGroupId.get())
+                        || artifactId != null && !artifactId.bytesEquals(lastArtifactId.get())) {
+                    terms.write(buffered);
+                    lastGroupId.copyBytes(terms.groupId());
+                    if (artifactId != null) {
+                        lastArtifactId.copyBytes(artifactId);
+                    }
+                    rows++;
+                }
+                if (terms.next()) {
+                    queue.add(terms);
+                }
+            }
+            buffered.flush();
+        } finally {
+            for (int i = 0; i < searchers.length; i++) {
+                if (searchers[i] != null) {
+                    indexes.get(i).releaseIndexSearcher(searchers[i]);
+                }
+            }
+        }
+        metrics.timer("search").stop(start);
+        metrics.count("rows", rows);
+        log("------");
+        log("Values listed: " + rows);
+        log("Listing took " + Duration.between(searchStart, Instant.now()).getSeconds() + " seconds");
+        log();
+    }
+
+    /**
+     * Writes the coordinates of the artifacts with the SHA-1 checksums of the given files, the rows are tagged by the file
+     * path. The files are hashed in parallel, then the sorted checksums are looked up in the terms dictionary of each
+     * index segment and the hits are written in the document order. The query filters don't apply.
+     */
+    void identify(List<RepositoryIndex> indexes, List<Path> files, OutputStream out) throws IOException {
+        log("Identifying " + files.size() + " files");
+        log("------");
+        Instant searchStart = Instant.now();
+        long start = System.nanoTime();
+        // sorted, so the terms are looked up in the index order
+        Map<BytesRef, List<Path>> filesBySha1 = new TreeMap<>();
+        try (ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors())) {
+            List<Future<String>> futures = new ArrayList<>();
+            for (Path file : files) {
+                futures.add(executor.submit(() -> FileChecksums.sha1(file)));
+            }
+            for (int i = 0; i < files.size(); i++) {
+                try {
+                    filesBySha1.computeIfAbsent(new BytesRef(await(futures.get(i))), k -> new ArrayList<>())
+                            .add(files.get(i));
+                } catch (IOException e) {
+                    log("\tSkipping " + files.get(i) + " (" + e + ")");
+                }
+            }
+        }
+        metrics.timer("identify_hash").stop(start);
+        start = System.nanoTime();
+        ResultWriter writer = ResultWriter.create(out, config);
+        Set<BytesRef> found = new HashSet<>();
+        long hits = 0L;
+        for (int i = 0; i < indexes.size(); i++) {
+            Map<BytesRef, List<BytesRef>> tagsBySha1 = new TreeMap<>();
+            for (Map.Entry<BytesRef, List<Path>> entry : filesBySha1.entrySet()) {
+                List<BytesRef> tags = new ArrayList<>();
+                for (Path file : entry.getValue()) {
+                    tags.add(new BytesRef(tag(file.toString(), indexes, i)));
+                }
+                tagsBySha1.put(entry.getKey(), tags);
+            }
+            hits += lookupChecksums(indexes.get(i), tagsBySha1, writer, found);
+        }
+        writer.flush();
+        metrics.timer("search").stop(start);
+        metrics.count("hits", hits);
+        metrics.count("rows", writer.getRowCount());
+        long identified = 0L;
+        for (Map.Entry<BytesRef, List<Path>> entry : filesBySha1.entrySet()) {
+            if (found.contains(entry.getKey())) {
+                identified += entry.getValue().size();
+            } else {
+                for (Path file : entry.getValue()) {
+                    log("\tNot found: " + file);
+                }
+            }
+        }
+        log("------");
+        log("Files identified: " + identified + " of " + files.size());
+        log("Artifacts listed: " + writer.getRowCount());
+        log("Identification took " + Duration.between(searchStart, Instant.now()).getSeconds() + " seconds");
+        log();
+    }
+
+    /**
+     * Writes the artifacts with the given checksums (sorted) tagged by the mapped tags and adds the found checksums to the
+     * given set.
+     */
+    private long lookupChecksums(RepositoryIndex index, Map<BytesRef, List<BytesRef>> tagsBySha1,
+            ResultWriter writer, Set<BytesRef> found) throws IOException {
+        ResultCollector collector = new ResultCollector(index, writer, (String) null, hitMetrics());
+        IndexSearcher searcher = index.acquireIndexSearcher();
+        try {
+            for (LeafReaderContext leaf : searcher.getIndexReader().leaves()) {
+                Terms terms = leaf.reader().terms(MinimalArtifactInfoIndexCreator.FLD_SHA1.getKey());
+                if (terms == null) {
+                    continue;
+                }
+                TermsEnum termsEnum = terms.iterator();
+                Bits liveDocs = leaf.reader().getLiveDocs();
+                PostingsEnum postings = null;
+                Map<Integer, List<BytesRef>> tagsByDoc = new TreeMap<>();
+                for (Map.Entry<BytesRef, List<BytesRef>> entry : tagsBySha1.entrySet()) {
+                    if (!termsEnum.seekExact(entry.getKey())) {
+                        continue;
+                    }
+                    postings = termsEnum.postings(postings, PostingsEnum.NONE);
+                    for (int doc = postings.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = postings.nextDoc()) {
+                        if (liveDocs == null || liveDocs.get(doc)) {
+                            tagsByDoc.put(doc, entry.getValue());
+                            found.add(entry.getKey());
+                        }
+                    }
+                }
+                // the DocValues are read forward only
+                for (Map.Entry<Integer, List<BytesRef>> hit : tagsByDoc.entrySet()) {
+                    collector.collect(leaf, hit.getKey(), hit.getValue());
+                }
+            }
+        } finally {
+            index.releaseIndexSearcher(searcher);
+        }
+        return collector.getHitCount();
+    }
+
+    Metrics getMetrics() {
+        return metrics;
+    }
+
+    void closeIndexes(List<RepositoryIndex> indexes) throws IOException {
+        for (RepositoryIndex index : indexes) {
+            index.close();
+        }
+    }
+
+    private void runQuery(List<RepositoryIndex> indexes, BooleanQuery query, Config queryConfig, OutputStream out)
+            throws IOException {
+        if (SummaryCollector.isSummary(queryConfig)) {
+            runSummary(indexes, query, queryConfig, out);
+            return;
+        }
         log("Querying index");
         log("------");
         Instant searchStart = Instant.now();
-        final IteratorSearchRequest request = new IteratorSearchRequest(query, Collections.singletonList(indexingContext));
-        long count = 0L;
-        try (final IteratorSearchResponse response = indexer.searchIterator(request)) {
-            for (ArtifactInfo ai : response) {
-                resultStream.println(getCoordinates(ai));
-                count++;
+        ResultWriter writer = ResultWriter.create(out, queryConfig);
+        long start = System.nanoTime();
+        long hits = searchAll(indexes, query, queryConfig, writer, null);
+        writer.flush();
+        metrics.timer("search").stop(start);
+        metrics.count("hits", hits);
+        metrics.count("rows", writer.getRowCount());
+        long secondsDiff = Duration.between(searchStart, Instant.now()).getSeconds();
+        log("------");
+        log("Total response size: " + hits);
+        log("Artifacts listed: " + writer.getRowCount());
+        log("Query took " + secondsDiff + " seconds");
+        log();
+    }
+
+    /**
+     * Writes the number of hits ({@code --count}) followed by the hit counts per value of the facet field
+     * ({@code --facet}), in the descending order. The repositories are searched in parallel and their counts are summed.
+     */
+    private void runSummary(List<RepositoryIndex> indexes, BooleanQuery query, Config queryConfig,
+            OutputStream out) throws IOException {
+        log("Counting hits");
+        log("------");
+        Instant searchStart = Instant.now();
+        String facetField = SummaryCollector.getFacetField(queryConfig);
+        long start = System.nanoTime();
+        long hits = 0L;
+        Map<String, Long> counts = new HashMap<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<SummaryCollector>> futures = new ArrayList<>();
+            List<Future<Integer>> countFutures = new ArrayList<>();
+            for (RepositoryIndex index : indexes) {
+                if (facetField == null) {
+                    // the count can use the index statistics instead of visiting the hits
+                    countFutures.add(executor.submit(() -> count(index, query)));
+                } else {
+                    futures.add(executor.submit(() -> {
+                        SummaryCollector collector = new SummaryCollector(facetField);
+                        IndexSearcher searcher = index.acquireIndexSearcher();
+                        try {
+                            searcher.search(query, collector);
+                        } finally {
+                            index.releaseIndexSearcher(searcher);
+                        }
+                        return collector;
+                    }));
+                }
+            }
+            for (Future<Integer> future : countFutures) {
+                hits += await(future);
+            }
+            for (Future<SummaryCollector> future : futures) {
+                SummaryCollector collector = await(future);
+                hits += collector.getHitCount();
+                collector.getCounts().forEach((value, count) -> counts.merge(value, count, Long::sum));
+            }
+        }
+        metrics.timer("search").stop(start);
+        metrics.count("hits", hits);
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        if (queryConfig.isCount()) {
+            writer.write(Long.toString(hits));
+            writer.write('\n');
+        }
+        List<Map.Entry<String, Long>> entries = new ArrayList<>(counts.entrySet());
+        entries.sort(Map.Entry.<String, Long> comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()));
+        for (Map.Entry<String, Long> entry : entries) {
+            writer.write(entry.getKey());
+            writer.write('\t');
+            writer.write(Long.toString(entry.getValue()));
+            writer.write('\n');
+        }
+        writer.flush();
+        log("------");
+        log("Total response size: " + hits);
+        if (facetField != null) {
+            log("Distinct " + queryConfig.getFacet() + " values: " + counts.size());
+        }
+        log("Counting took " + Duration.between(searchStart, Instant.now()).getSeconds() + " seconds");
+        log();
+    }
+
+    private static int count(RepositoryIndex index, Query query) throws IOException {
+        IndexSearcher searcher = index.acquireIndexSearcher();
+        try {
+            return searcher.count(query);
+        } finally {
+            index.releaseIndexSearcher(searcher);
+        }
+    }
+
+    /**
+     * Searches all the repositories and writes the hits. The rows are tagged by the given query id (if not {@code null})
+     * and by the repository URL when more repositories are searched.
+     */
+    private long searchAll(List<RepositoryIndex> indexes, BooleanQuery query, Config queryConfig,
+            ResultWriter writer, String queryId) throws IOException {
+        Sort sort = createSort(queryConfig);
+        if (queryConfig.isLatest()) {
+            return searchLatest(indexes, query, queryConfig.getLimit(), writer, queryId);
+        }
+        if (sort != null || queryConfig.getLimit() > 0) {
+            return searchTop(indexes, query, sort != null ? sort : Sort.INDEXORDER, queryConfig.getLimit(), writer,
+                    queryId);
+        }
+        if (indexes.size() == 1) {
+            return search(indexes.get(0), query, writer, queryId);
+        }
+        // the repositories are searched in parallel and the rows are tagged by the repository URL
+        long hits = 0L;
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<Long>> futures = new ArrayList<>();
+            for (int i = 0; i < indexes.size(); i++) {
+                RepositoryIndex index = indexes.get(i);
+                String tag = tag(queryId, indexes, i);
+                futures.add(executor.submit(() -> search(index, query, writer, tag)));
+            }
+            for (Future<Long> future : futures) {
+                hits += await(future);
             }
-            long secondsDiff = Duration.between(searchStart, Instant.now()).getSeconds();
-            log("------");
-            log("Total response size: " + response.getTotalHitsCount());
-            log("Artifacts listed: " + count);
-            log("Query took " + secondsDiff + " seconds");
-            log();
         }
+        return hits;
     }
 
-    private String getCoordinates(ArtifactInfo ai) {
-        StringBuilder sb = new StringBuilder();
-        sb.append(ai.getGroupId()).append(":").append(ai.getArtifactId()).append(":").append(ai.getVersion()).append(":")
-                .append(ai.getFileExtension()).append(":").append(Objects.toString(ai.getClassifier(), ""));
+    /**
+     * Searches all the given GA lookups (with the same other filters) by a single query on the groupId and artifactId
+     * sets. The query can also match combinations of the groupIds and artifactIds which weren't asked for, such hits are
+     * skipped by the collector.
+     */
+    private long searchGaLookups(List<RepositoryIndex> indexes, List<BatchQuery> lookups, ResultWriter writer)
+            throws IOException {
+        Set<BytesRef> groupIds = new HashSet<>();
+        Set<BytesRef> artifactIds = new HashSet<>();
+        for (BatchQuery lookup : lookups) {
+            groupIds.add(new BytesRef(lookup.getConfig().getGroupId()));
+            artifactIds.add(new BytesRef(lookup.getConfig().getArtifactId()));
+        }
+        Query gaFilter = new BooleanQuery.Builder()
+                .add(new TermInSetQuery(MinimalArtifactInfoIndexCreator.FLD_GROUP_ID_KW.getKey(), groupIds), Occur.MUST)
+                .add(new TermInSetQuery(MinimalArtifactInfoIndexCreator.FLD_ARTIFACT_ID_KW.getKey(), artifactIds), Occur.MUST)
+                .build();
+        BooleanQuery query = createQuery(lookups.get(0).getConfig(), gaFilter);
+        long hits = 0L;
+        for (int i = 0; i < indexes.size(); i++) {
+            Map<BytesRef, List<BytesRef>> tagsByGa = new HashMap<>();
+            for (BatchQuery lookup : lookups) {
+                BytesRef gaKey = ResultCollector.gaKey(new BytesRef(lookup.getConfig().getGroupId()),
+                        new BytesRef(lookup.getConfig().getArtifactId()));
+                tagsByGa.computeIfAbsent(gaKey, k -> new ArrayList<>())
+                        .add(new BytesRef(tag(lookup.getId(), indexes, i)));
+            }
+            RepositoryIndex index = indexes.get(i);
+            hits += search(index, query, new ResultCollector(index, writer, tagsByGa, hitMetrics()));
+        }
+        return hits;
+    }
 
-        if (config.isUseTimestamp()) {
-            sb.append(":").append(formatTimestamp(ai.getLastModified()));
+    private static String tag(String queryId, List<RepositoryIndex> indexes, int shard) {
+        String repositoryUrl = indexes.size() > 1 ? indexes.get(shard).getRepositoryUrl() : null;
+        if (queryId == null) {
+            return repositoryUrl;
         }
-        return sb.toString();
+        return repositoryUrl == null ? queryId : queryId + "\t" + repositoryUrl;
     }
 
-    private String formatTimestamp(long timestamp) {
-        return timestampFormatter != null ? timestampFormatter.format(Instant.ofEpochMilli(timestamp))
-                : Long.toString(timestamp);
+    private long search(RepositoryIndex index, BooleanQuery query, ResultWriter writer, String tag)
+            throws IOException {
+        return search(index, query, new ResultCollector(index, writer, tag, hitMetrics()));
     }
 
-    private BooleanQuery buildQuery() {
+    private static long search(RepositoryIndex index, Query query, ResultCollector collector) throws IOException {
+        IndexSearcher searcher = index.acquireIndexSearcher();
+        try {
+            searcher.search(query, collector);
+        } finally {
+            index.releaseIndexSearcher(searcher);
+        }
+        return collector.getHitCount();
+    }
+
+    /**
+     * Searches the top hits by using the given sort order and writes them. Only the limited number of documents is loaded
+     * when the limit is positive.
+     */
+    private long searchTop(List<RepositoryIndex> indexes, BooleanQuery query, Sort sort, int limit,
+            ResultWriter writer, String queryId) throws IOException {
+        int shards = indexes.size();
+        IndexSearcher[] searchers = new IndexSearcher[shards];
+        try {
+            TopFieldDocs[] shardHits = new TopFieldDocs[shards];
+            try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+                List<Future<TopFieldDocs>> futures = new ArrayList<>();
+                for (int i = 0; i < shards; i++) {
+                    IndexSearcher searcher = indexes.get(i).acquireIndexSearcher();
+                    searchers[i] = searcher;
+                    int shardIndex = i;
+                    futures.add(executor.submit(() -> {
+                        int n = limit > 0 ? limit : Math.max(1, searcher.count(query));
+                        TopFieldDocs topDocs = searcher.search(query, n, sort);
+                        for (ScoreDoc scoreDoc : topDocs.scoreDocs) {
+                            scoreDoc.shardIndex = shardIndex;
+                        }
+                        return topDocs;
+                    }));
+                }
+                for (int i = 0; i < shards; i++) {
+                    shardHits[i] = await(futures.get(i));
+                }
+            }
+            int size = 0;
+            long hits = 0L;
+            for (TopFieldDocs topDocs : shardHits) {
+                size += topDocs.scoreDocs.length;
+                hits += topDocs.totalHits.value;
+            }
+            TopDocs merged = shards == 1 ? shardHits[0] : TopDocs.merge(sort, limit > 0 ? limit : Math.max(1, size), shardHits);
+            ResultCollector[] collectors = new ResultCollector[shards];
+            for (int i = 0; i < shards; i++) {
+                collectors[i] = new ResultCollector(indexes.get(i), writer, tag(queryId, indexes, i),
+                        hitMetrics());
+            }
+            for (ScoreDoc scoreDoc : merged.scoreDocs) {
+                writeHit(searchers[scoreDoc.shardIndex], collectors[scoreDoc.shardIndex], scoreDoc.doc);
+            }
+            return hits;
+        } finally {
+            for (int i = 0; i < shards; i++) {
+                if (searchers[i] != null) {
+                    indexes.get(i).releaseIndexSearcher(searchers[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Searches the hits with the highest version of each GA in a single pass over each repository and writes them.
+     */
+    private long searchLatest(List<RepositoryIndex> indexes, BooleanQuery query, int limit,
+            ResultWriter writer, String queryId) throws IOException {
+        int shards = indexes.size();
+        IndexSearcher[] searchers = new IndexSearcher[shards];
+        try {
+            LatestVersionCollector latest = null;
+            try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+                List<Future<LatestVersionCollector>> futures = new ArrayList<>();
+                for (int i = 0; i < shards; i++) {
+                    IndexSearcher searcher = indexes.get(i).acquireIndexSearcher();
+                    searchers[i] = searcher;
+                    LatestVersionCollector collector = new LatestVersionCollector(i);
+                    futures.add(executor.submit(() -> {
+                        searcher.search(query, collector);
+                        return collector;
+                    }));
+                }
+                for (Future<LatestVersionCollector> future : futures) {
+                    LatestVersionCollector collector = await(future);
+                    if (latest == null) {
+                        latest = collector;
+                    } else {
+                        latest.merge(collector);
+                    }
+                }
+            }
+            ResultCollector[] collectors = new ResultCollector[shards];
+            for (int i = 0; i < shards; i++) {
+                collectors[i] = new ResultCollector(indexes.get(i), writer, tag(queryId, indexes, i),
+                        hitMetrics());
+            }
+            long[] latestHits = latest.getLatestHits();
+            int count = limit > 0 ? Math.min(limit, latestHits.length) : latestHits.length;
+            for (int i = 0; i < count; i++) {
+                int shard = (int) (latestHits[i] >>> 32);
+                writeHit(searchers[shard], collectors[shard], (int) latestHits[i]);
+            }
+            return latest.getHitCount();
+        } finally {
+            for (int i = 0; i < shards; i++) {
+                if (searchers[i] != null) {
+                    indexes.get(i).releaseIndexSearcher(searchers[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the metrics for timing of the individual hits. Timing each hit isn't free, so the hits are only timed when
+     * the metrics are reported.
+     */
+    private Metrics hitMetrics() {
+        return config.getMetrics() != null || config.getServerPort() > 0 ? metrics : null;
+    }
+
+    private static void writeHit(IndexSearcher searcher, ResultCollector collector, int doc) throws IOException {
+        List<LeafReaderContext> leaves = searcher.getIndexReader().leaves();
+        LeafReaderContext leaf = leaves.get(ReaderUtil.subIndex(doc, leaves));
+        collector.collect(leaf, doc - leaf.docBase);
+    }
+
+    private static <T> T await(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException ioe) {
+                throw ioe;
+            }
+            if (cause instanceof RuntimeException re) {
+                throw re;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    private static boolean isFilterSet(String value, String defaultValue) {
+        return value != null && !"-".equals(value) && !value.equals(defaultValue);
+    }
+
+    /**
+     * Checks the query options of the given configuration (timestamp pattern, output format, filter patterns, sort
+     * order, facet and class name), so an invalid query fails before it's run. It's used for the command line, the batch
+     * queries and the query server requests.
+     *
+     * @throws IllegalArgumentException when a query option is not valid
+     */
+    static void validateQuery(Config queryConfig) {
+        createTimestampFormatter(queryConfig);
+        ResultWriter.getFormat(queryConfig);
+        FilterPattern.check(queryConfig);
+        createSort(queryConfig);
+        SummaryCollector.getFacetField(queryConfig);
+        if (queryConfig.getClassName() != null) {
+            ClassIndex.toQuery(queryConfig.getClassName());
+        }
+    }
+
+    static DateTimeFormatter createTimestampFormatter(Config queryConfig) {
+        String tf = queryConfig.getTimestampFormat();
+        if (tf == null) {
+            return null;
+        }
+        return "ISO".equals(tf.toUpperCase(Locale.ROOT)) ? DateTimeFormatter.ISO_INSTANT
+                : DateTimeFormatter.ofPattern(tf).withZone(ZoneId.systemDefault());
+    }
+
+    /**
+     * Returns the result sort order configured by the {@code --sort} option or {@code null} when the results are not sorted.
+     *
+     * @throws IllegalArgumentException when the sort order is not supported
+     */
+    static Sort createSort(Config queryConfig) {
+        String sort = queryConfig.getSort();
+        if (sort == null) {
+            return null;
+        }
+        if (queryConfig.isLatest()) {
+            throw new IllegalArgumentException("The --sort option can't be combined with --latest");
+        }
+        SortField groupId = new SortField(CustomArtifactInfoIndexCreator.DV_GROUP_ID, SortField.Type.STRING);
+        SortField artifactId = new SortField(CustomArtifactInfoIndexCreator.DV_ARTIFACT_ID, SortField.Type.STRING);
+        SortField version = new SortField(CustomArtifactInfoIndexCreator.DV_VERSION_KEY, SortField.Type.STRING, true);
+        switch (sort.toLowerCase(Locale.ROOT)) {
+            case "lastmodified":
+                return new Sort(new SortField(CustomArtifactInfoIndexCreator.DV_LAST_MODIFIED, SortField.Type.LONG, true));
+            case "ga":
+                return new Sort(groupId, artifactId, version);
+            case "version":
+                return new Sort(version, groupId, artifactId);
+            default:
+                throw new IllegalArgumentException("Unsupported sort order: " + sort + " (use lastModified, ga or version)");
+        }
+    }
+
+    /**
+     * Restricts the given query to the artifacts containing the class given by {@code --class}, if any.
+     */
+    private BooleanQuery addClassFilter(List<RepositoryIndex> indexes, BooleanQuery query, Config queryConfig)
+            throws IOException {
+        if (queryConfig.getClassName() == null) {
+            return query;
+        }
+        return new BooleanQuery.Builder().add(query, Occur.MUST)
+                .add(createClassFilter(indexes, queryConfig.getClassName()), Occur.MUST).build();
+    }
+
+    /**
+     * Looks up the artifacts containing the given class in the class indexes of the repositories, see
+     * {@link ClassIndex}.
+     *
+     * @throws IllegalArgumentException when the class is in more than {@link ClassIndex#MAX_MATCHES} artifacts
+     */
+    private Query createClassFilter(List<RepositoryIndex> indexes, String className) throws IOException {
+        log("Looking up class " + className);
+        long start = System.nanoTime();
+        Set<BytesRef> uinfos = new HashSet<>();
+        for (RepositoryIndex index : indexes) {
+            ClassIndex.Searcher classIndex = index.getClassIndexSearcher();
+            if (classIndex == null) {
+                log("\tWARNING: " + index.getRepositoryUrl()
+                        + " has no class index, run an index update with --class-index to build it");
+            } else {
+                classIndex.lookup(className, uinfos);
+            }
+        }
+        metrics.timer("class_lookup").stop(start);
+        log("\tFound in " + uinfos.size() + " artifacts");
+        return new TermInSetQuery(ArtifactInfo.UINFO, uinfos);
+    }
+
+    private BooleanQuery buildQuery(Config queryConfig) {
         log("Building the query");
+        long start = System.nanoTime();
+        BooleanQuery query = createQuery(queryConfig, null);
+        metrics.timer("query_build").stop(start);
+        log("\t" + query);
+        return query;
+    }
 
+    /**
+     * Creates the query from the filters in the given configuration. The groupId and artifactId filters are replaced by the
+     * given GA filter when it's not {@code null}.
+     */
+    private BooleanQuery createQuery(Config queryConfig, Query gaFilter) {
         BooleanQuery.Builder builder = new BooleanQuery.Builder();
 
-        builder.add(indexer.constructQuery(MAVEN.VERSION, new SourcedSearchExpression("*")), Occur.MUST);
+        // only the artifact documents have a version, the exists query iterates the DocValues instead of all the terms
+        builder.add(new FieldExistsQuery(CustomArtifactInfoIndexCreator.DV_VERSION_KEY), Occur.MUST);
 
-        addToQuery(builder, MAVEN.GROUP_ID, config.getGroupId());
-        addToQuery(builder, MAVEN.ARTIFACT_ID, config.getArtifactId());
-        addToQuery(builder, MAVEN.EXTENSION, config.getPackaging());
-        addToQuery(builder, MAVEN.CLASSIFIER, config.getClassifier());
+        if (gaFilter == null) {
+            addToQuery(builder, MAVEN.GROUP_ID, queryConfig.getGroupId());
+            addToQuery(builder, MAVEN.ARTIFACT_ID, queryConfig.getArtifactId());
+        } else {
+            builder.add(gaFilter, Occur.MUST);
+        }
+        addToQuery(builder, MAVEN.VERSION, queryConfig.getArtifactVersion());
+        if (queryConfig.getVersionRange() != null) {
+            builder.add(VersionRange.toQuery(queryConfig.getVersionRange()), Occur.MUST);
+        }
+        addToQuery(builder, MAVEN.EXTENSION, queryConfig.getPackaging());
+        addToQuery(builder, MAVEN.CLASSIFIER, queryConfig.getClassifier());
 
-        int lastDays = config.getLastDays();
+        int lastDays = queryConfig.getLastDays();
         if (lastDays > 0) {
-            long lastModifiedRangeStart = Instant.now().minus(lastDays, ChronoUnit.DAYS).toEpochMilli();
+            // the same query within an hour has the same cache key, and the cache doesn't change the results
+            long lastModifiedRangeStart = Instant.now().minus(lastDays, ChronoUnit.DAYS).truncatedTo(ChronoUnit.HOURS)
+                    .toEpochMilli();
             builder.add(LongPoint.newRangeQuery(CustomArtifactInfoIndexCreator.FLD_LAST_MODIFIED.getKey(),
                     lastModifiedRangeStart, Long.MAX_VALUE), Occur.MUST);
         }
-        BooleanQuery query = builder.build();
-        log("\t" + query);
-        return query;
+        return builder.build();
     }
 
     private boolean addToQuery(Builder builder, Field field, String val) {
@@ -197,22 +1073,102 @@ public class MvnQuery {
         if (val.isEmpty()) {
             builder.add(indexer.constructQuery(field, new SourcedSearchExpression(Field.NOT_PRESENT)), Occur.MUST_NOT);
         } else {
-            builder.add(indexer.constructQuery(field, new SourcedSearchExpression(val)), Occur.MUST);
+            Query pattern = FilterPattern.toQuery(field, val);
+            builder.add(pattern != null ? pattern : indexer.constructQuery(field, new SourcedSearchExpression(val)),
+                    Occur.MUST);
         }
 
         return true;
     }
 
-    private void updateIndex(IndexingContext indexingContext) throws IOException {
-        File repoDir = new File(config.getConfigDataDir(), hashRepo(config.getConfigRepo()));
-        Path propsPath = repoDir.toPath().resolve(FILENAME_INDEX_PROPERTIES);
+    /**
+     * Opens the index of the given repository and updates it when needed.
+     */
+    private RepositoryIndex prepareIndex(String configRepo) throws IOException {
+        long start = System.nanoTime();
+        RepositoryIndex index = initIndex(configRepo);
+        metrics.timer("init_context").stop(start);
+        if (config.isReadOnly()) {
+            log("Skipping index update (read-only mode)");
+        } else {
+            updateIndex(index.getIndexingContext());
+        }
+        return index;
+    }
 
-        Properties props = new Properties();
-        if (Files.exists(propsPath)) {
-            try (InputStream in = Files.newInputStream(propsPath)) {
-                props.load(in);
+    /**
+     * Returns a copy of the given list in which the indexes of repositories with a newer published generation (see
+     * {@code --refresh}) are replaced by newly opened indexes. Returns {@code null} when no newer generation exists.
+     */
+    List<RepositoryIndex> reopenRefreshed(List<RepositoryIndex> indexes) throws IOException {
+        List<RepositoryIndex> result = null;
+        for (int i = 0; i < indexes.size(); i++) {
+            RepositoryIndex index = indexes.get(i);
+            File repoDir = index.getIndexDirectoryFile().getParentFile();
+            File indexDir = indexDir(repoDir, getGeneration(loadProperties(repoDir)));
+            if (!indexDir.equals(index.getIndexDirectoryFile())) {
+                if (result == null) {
+                    result = new ArrayList<>(indexes);
+                }
+                log("Reopening refreshed index " + indexDir);
+                result.set(i, initIndex(index.getRepositoryUrl()));
             }
         }
+        return result;
+    }
+
+    /**
+     * Updates the indexes of the configured repositories without touching the ones used by queries. The current index
+     * generation is copied to a staging directory, updated there and then published by switching the generation in the
+     * {@code index.properties} file.
+     */
+    private void refreshIndexes() throws IOException {
+        for (String configRepo : config.getConfigRepos().stream().distinct().toList()) {
+            refreshIndex(configRepo);
+        }
+    }
+
+    private void refreshIndex(String configRepo) throws IOException {
+        File repoDir = new File(config.getConfigDataDir(), hashRepo(configRepo));
+        Files.createDirectories(repoDir.toPath());
+        try (FileChannel lockChannel = openUpdateLock(repoDir); FileLock lock = lockChannel.tryLock()) {
+            if (lock == null) {
+                throw new IOException("Another update of the " + configRepo + " index is running");
+            }
+            Properties props = loadProperties(repoDir);
+            int generation = getGeneration(props);
+            File currentDir = indexDir(repoDir, generation);
+            File stagingDir = indexDir(repoDir, generation + 1);
+            log("Refreshing index " + configRepo + " in " + stagingDir);
+            // leftovers of a failed refresh
+            deleteRecursively(stagingDir.toPath());
+            deleteRecursively(ClassIndex.dir(stagingDir));
+            if (currentDir.isDirectory()) {
+                copyIndex(currentDir.toPath(), stagingDir.toPath());
+            }
+            if (Files.isDirectory(ClassIndex.dir(currentDir))) {
+                copyIndex(ClassIndex.dir(currentDir), ClassIndex.dir(stagingDir));
+            }
+            IndexingContext indexingContext = createIndexingContext(configRepo, stagingDir);
+            try {
+                fetchUpdate(indexingContext, props, isLayoutChanged(indexingContext, props));
+            } finally {
+                indexer.closeIndexingContext(indexingContext, false);
+            }
+            props.setProperty(PROP_INDEX_GENERATION, Integer.toString(generation + 1));
+            storeProperties(repoDir, props);
+            log("\tPublished index generation " + (generation + 1));
+            // the previous generation may still be used by running queries
+            for (int i = 0; i < generation; i++) {
+                deleteRecursively(indexDir(repoDir, i).toPath());
+                deleteRecursively(ClassIndex.dir(indexDir(repoDir, i)));
+            }
+        }
+    }
+
+    private void updateIndex(IndexingContext indexingContext) throws IOException {
+        File repoDir = indexingContext.getIndexDirectoryFile().getParentFile();
+        Properties props = loadProperties(repoDir);
 
         // Maven Central indexes are updated once a week, but
         // other index sources might have different index publishing frequency.
@@ -236,14 +1192,18 @@ public class MvnQuery {
         }
 
         boolean needsUpdate = true;
+        boolean layoutChanged = isLayoutChanged(indexingContext, props);
 
         // When it's the first update or force flag is set, then always perform the update
         if (!(config.isForceUpdate() || indexingContext.getTimestamp() == null)) {
             if (config.isSkipUpdate()) {
+                if (layoutChanged) {
+                    log("Index layout is outdated, run without --skip-update to rebuild it");
+                }
                 needsUpdate = false;
             } else if (lastUpdate != null) {
                 Instant nextAllowedUpdate = lastUpdate.plus(updateIntervalHours, ChronoUnit.HOURS);
-                needsUpdate = now.isAfter(nextAllowedUpdate);
+                needsUpdate = layoutChanged || now.isAfter(nextAllowedUpdate);
             }
         }
 
@@ -252,57 +1212,288 @@ public class MvnQuery {
             return;
         }
 
-        log("Updating Index ...");
+        try (FileChannel lockChannel = openUpdateLock(repoDir); FileLock lock = lockChannel.lock()) {
+            // reloaded under the lock, so the changes of other processes (e.g. feed checkpoints) aren't overwritten
+            props = loadProperties(repoDir);
+            props.setProperty(PROP_UPDATE_INTERVAL_HOURS, Long.toString(updateIntervalHours));
+            if (!indexingContext.getIndexDirectoryFile().equals(indexDir(repoDir, getGeneration(props)))) {
+                log("Skipping index update (a refreshed index was published meanwhile)");
+                return;
+            }
+            fetchUpdate(indexingContext, props, layoutChanged);
+            storeProperties(repoDir, props);
+        }
+    }
+
+    /**
+     * Opens the file which is locked by the processes updating the repository index (in place or by a refresh), so
+     * concurrent updates don't interfere. Queries don't use it.
+     */
+    private static FileChannel openUpdateLock(File repoDir) throws IOException {
+        return FileChannel.open(repoDir.toPath().resolve(FILENAME_UPDATE_LOCK), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE);
+    }
+
+    /**
+     * The documents have to be fully reindexed when the index was created with a different fields layout or ingest
+     * filter, or when the class index is enabled, but it wasn't built yet.
+     */
+    private static boolean isLayoutChanged(IndexingContext indexingContext, Properties props) {
+        if (indexingContext.getTimestamp() == null) {
+            return false;
+        }
+        ClassIndex classIndex = ClassIndex.of(indexingContext);
+        IngestFilter ingestFilter = IngestFilter.of(indexingContext);
+        return !Integer.toString(CustomArtifactInfoIndexCreator.LAYOUT_VERSION).equals(props.getProperty(PROP_INDEX_LAYOUT))
+                || classIndex != null && !classIndex.exists()
+                || !Objects.equals(ingestFilter == null ? null : ingestFilter.toString(),
+                        props.getProperty(PROP_INGEST_GROUPS));
+    }
+
+    /**
+     * Fetches the index update into the given context and records it in the given index properties. The chunks applied by
+     * an incremental update are recorded for the changes feed. It has to be called under the update lock.
+     */
+    private void fetchUpdate(IndexingContext indexingContext, Properties props, boolean layoutChanged) throws IOException {
+        String configRepo = indexingContext.getRepositoryUrl();
+        File repoDir = indexingContext.getIndexDirectoryFile().getParentFile();
+        log("Updating Index " + configRepo + " ...");
         log("\tThis might take a while on first run, so please be patient!");
 
+        Instant now = Instant.now();
+        long start = System.nanoTime();
         Date contextCurrentTimestamp = indexingContext.getTimestamp();
-        IndexUpdateRequest updateRequest = new IndexUpdateRequest(indexingContext, new Java11HttpClient());
-        IndexUpdateResult updateResult = indexUpdater.fetchAndUpdateIndex(updateRequest);
+        Java11HttpClient fetcher = new Java11HttpClient(config.getFetchThreads(), repoDir.toPath().resolve("cache"),
+                this::log);
+        IndexUpdateRequest updateRequest = new IndexUpdateRequest(indexingContext, fetcher);
+        // one thread decodes the index data, the others build the documents into separate segments
+        updateRequest.setThreads(Math.max(1, config.getIndexThreads()));
+        if (layoutChanged) {
+            log("\tIndex layout changed, full update is required");
+            updateRequest.setForceFullUpdate(true);
+        }
+        IngestFilter ingestFilter = IngestFilter.of(indexingContext);
+        if (ingestFilter != null) {
+            log("\tIndexing only the groupIds " + ingestFilter);
+            updateRequest.setDocumentFilter(ingestFilter);
+        }
+        IndexUpdateResult updateResult;
+        ClassIndex classIndex = ClassIndex.of(indexingContext);
+        resetPeakHeap();
+        changesJournal.begin(indexingContext, repoDir, props);
+        try {
+            if (classIndex != null) {
+                classIndex.begin();
+            }
+            updateResult = indexUpdater.fetchAndUpdateIndex(updateRequest);
+            if (classIndex != null) {
+                classIndex.commit(updateResult.isFullUpdate());
+                props.setProperty(PROP_CLASS_INDEX, "true");
+            }
+            changesJournal.commit(indexingContext, props);
+            int pruned = fetcher.pruneCache();
+            if (pruned > 0) {
+                log("\tRemoved " + pruned + " outdated files from the download cache");
+            }
+        } finally {
+            changesJournal.discard(indexingContext);
+            if (classIndex != null) {
+                classIndex.discard();
+            }
+        }
+        long updateNanos = System.nanoTime() - start;
+        long peakHeap = peakHeapBytes();
+        metrics.timer("update").record(updateNanos);
+        metrics.count("update_peak_heap_bytes", peakHeap);
+        metrics.count("update_bytes_downloaded", fetcher.getBytesDownloaded());
+        metrics.count("update_chunks_fetched", fetcher.getChunksRetrieved());
+        metrics.count(updateResult.isFullUpdate() ? "update_full" : "update_incremental", 1L);
 
+        boolean changed = true;
         if (updateResult.isFullUpdate()) {
             log("\tFull update happened!");
+            int documents = numDocs(indexingContext);
+            metrics.count("update_documents", documents);
+            log("\tIndexed " + documents + " documents with " + Math.max(1, config.getIndexThreads()) + " threads ("
+                    + documents * 1_000_000_000L / Math.max(1L, updateNanos) + " documents/s, peak heap "
+                    + peakHeap / (1024 * 1024) + " MB)");
+            if (config.isForceMerge()) {
+                forceMerge(indexingContext);
+            } else if (ingestFilter != null) {
+                // the filtered documents are only marked as deleted in the replaced index
+                indexingContext.getIndexWriter().forceMergeDeletes();
+                indexingContext.commit();
+            }
         } else {
             Date timestamp = updateResult.getTimestamp();
             if (timestamp == null || timestamp.equals(contextCurrentTimestamp)) {
                 log("\tNo update needed, index is up to date!");
+                changed = false;
             } else {
                 log("\tIncremental update happened, change covered " + contextCurrentTimestamp + " - " + timestamp
                         + " period.");
             }
         }
+        if (changed) {
+            ResultCache.clear(repoDir);
+        }
 
         props.setProperty(PROP_LAST_UPDATE_TIMESTAMP, Long.toString(now.getEpochSecond()));
-        props.setProperty(PROP_REPOSITORY_URL, config.getConfigRepo());
-
-        try (OutputStream out = Files.newOutputStream(propsPath)) {
-            props.store(out, "MvnQuery repository index properties");
+        props.setProperty(PROP_REPOSITORY_URL, configRepo);
+        props.setProperty(PROP_INDEX_LAYOUT, Integer.toString(CustomArtifactInfoIndexCreator.LAYOUT_VERSION));
+        if (ingestFilter != null) {
+            props.setProperty(PROP_INGEST_GROUPS, ingestFilter.toString());
+        } else {
+            props.remove(PROP_INGEST_GROUPS);
         }
 
         log("\tFinished in " + Duration.between(now, Instant.now()).getSeconds() + " sec");
         log();
     }
 
-    private IndexingContext initIndexingContext() throws IOException, ExistingLuceneIndexMismatchException {
-        String configRepo = config.getConfigRepo();
+    /**
+     * Merges the index into a single segment, so the queries don't have to visit many segments.
+     */
+    private void forceMerge(IndexingContext indexingContext) throws IOException {
+        long start = System.nanoTime();
+        indexingContext.getIndexWriter().forceMerge(1);
+        indexingContext.commit();
+        metrics.timer("update_force_merge").stop(start);
+        log("\tIndex merged into a single segment in " + Duration.ofNanos(System.nanoTime() - start).getSeconds() + " sec");
+    }
+
+    private static int numDocs(IndexingContext indexingContext) throws IOException {
+        IndexSearcher searcher = indexingContext.acquireIndexSearcher();
+        try {
+            return searcher.getIndexReader().numDocs();
+        } finally {
+            indexingContext.releaseIndexSearcher(searcher);
+        }
+    }
+
+    /**
+     * Resets the peak usage of the heap memory pools, see {@link #peakHeapBytes()}.
+     */
+    private static void resetPeakHeap() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+            }
+        }
+    }
+
+    /**
+     * Returns the sum of the peak usages of the heap memory pools since the last reset. The pools don't peak at the same
+     * time, so it's an upper bound of the real peak heap usage.
+     */
+    private static long peakHeapBytes() {
+        long peak = 0L;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+
+    private RepositoryIndex initIndex(String configRepo) throws IOException, ExistingLuceneIndexMismatchException {
         log("Initiating indexing context for " + configRepo);
-        String repoHash = hashRepo(configRepo);
-        File repoDir = new File(config.getConfigDataDir(), repoHash);
+        File repoDir = new File(config.getConfigDataDir(), hashRepo(configRepo));
         log("\t- repository index data location: " + repoDir);
+        File indexDir = indexDir(repoDir, getGeneration(loadProperties(repoDir)));
+        if (config.isReadOnly()) {
+            // no IndexWriter, so the index isn't locked and other processes can query or update it meanwhile
+            return RepositoryIndex.openReadOnly(configRepo, indexDir);
+        }
         if (!repoDir.exists()) {
             log("\t- creating index data directory");
             repoDir.mkdirs();
         }
+        return RepositoryIndex.of(createIndexingContext(configRepo, indexDir), indexer);
+    }
 
-        File cacheDir = new File(repoDir, "cache");
-        File indexDir = new File(repoDir, "index");
+    private IndexingContext createIndexingContext(String configRepo, File indexDir) throws IOException {
+        String repoHash = hashRepo(configRepo);
+        File cacheDir = new File(indexDir.getParentFile(), "cache");
 
+        Properties props = loadProperties(indexDir.getParentFile());
+        // the ingest filter given by the option replaces the stored one
+        IngestFilter ingestFilter = IngestFilter.parse(config.getIngestGroups() != null ? config.getIngestGroups()
+                : props.getProperty(PROP_INGEST_GROUPS));
         List<IndexCreator> indexers = new ArrayList<>();
-        indexers.add(new CustomArtifactInfoIndexCreator());
+        indexers.add(new CustomArtifactInfoIndexCreator(ingestFilter));
+        if (config.isClassIndex() || Boolean.parseBoolean(props.getProperty(PROP_CLASS_INDEX))) {
+            // the class names are collected to a separate index, the main index documents don't change
+            indexers.add(new ClassIndex(indexDir).creator(ingestFilter));
+        }
 
         return indexer.createIndexingContext(repoHash, repoHash, cacheDir, indexDir, configRepo, null, true, true, indexers);
     }
 
-    private static String hashRepo(String url) {
+    /**
+     * Returns the index directory of the given generation. The generation 0 is the index updated in place.
+     */
+    private static File indexDir(File repoDir, int generation) {
+        return new File(repoDir, generation == 0 ? "index" : "index-" + generation);
+    }
+
+    private static int getGeneration(Properties props) {
+        try {
+            return Integer.parseInt(props.getProperty(PROP_INDEX_GENERATION, "0"));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static Properties loadProperties(File repoDir) throws IOException {
+        Path propsPath = repoDir.toPath().resolve(FILENAME_INDEX_PROPERTIES);
+        Properties props = new Properties();
+        if (Files.exists(propsPath)) {
+            try (InputStream in = Files.newInputStream(propsPath)) {
+                props.load(in);
+            }
+        }
+        return props;
+    }
+
+    /**
+     * Replaces the index properties atomically, so readers never see a partially written file.
+     */
+    private static void storeProperties(File repoDir, Properties props) throws IOException {
+        Path propsPath = repoDir.toPath().resolve(FILENAME_INDEX_PROPERTIES);
+        Path tmpPath = repoDir.toPath().resolve(FILENAME_INDEX_PROPERTIES + ".tmp");
+        try (OutputStream out = Files.newOutputStream(tmpPath)) {
+            props.store(out, "MvnQuery repository index properties");
+        }
+        Files.move(tmpPath, propsPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Copies the index files except the write lock (the index may be opened by another process).
+     */
+    private static void copyIndex(Path source, Path target) throws IOException {
+        Files.createDirectories(target);
+        try (Stream<Path> files = Files.list(source)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                if (Files.isRegularFile(file) && !IndexWriter.WRITE_LOCK_NAME.equals(file.getFileName().toString())) {
+                    Files.copy(file, target.resolve(file.getFileName()));
+                }
+            }
+        }
+    }
+
+    static void deleteRecursively(Path dir) throws IOException {
+        if (!Files.exists(dir)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    static String hashRepo(String url) {
         try {
             MessageDigest digest = MessageDigest.getInstance("SHA-256");
             byte[] hash = digest.digest(url.getBytes(StandardCharsets.UTF_8));
@@ -0,0 +1,87 @@
+package com.github.kwart.mvnquery;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefBuilder;
+
+/**
+ * Newline delimited JSON: one object per row with the {@code groupId}, {@code artifactId}, {@code version},
+ * {@code extension} and {@code classifier} members. The {@code tag} member is only written for tagged rows and the
+ * {@code lastModified} member when timestamps are enabled (as a number of milliseconds, or as a string when the
+ * {@code --timestamp-format} is set).
+ */
+class NdjsonResultWriter extends ResultWriter {
+
+    private static final byte[] HEX = "0123456789abcdef".getBytes();
+
+    private final BytesRefBuilder timestamp = new BytesRefBuilder();
+
+    NdjsonResultWriter(OutputStream out, Config queryConfig) {
+        super(out, queryConfig);
+    }
+
+    @Override
+    protected void writeRow(BytesRef tag, BytesRef groupId, BytesRef artifactId, BytesRef version, BytesRef extension,
+            BytesRef classifier, long lastModified) throws IOException {
+        put('{');
+        if (tag != null) {
+            putMember("tag", tag);
+            put(',');
+        }
+        putMember("groupId", groupId);
+        put(',');
+        putMember("artifactId", artifactId);
+        put(',');
+        putMember("version", version);
+        put(',');
+        putMember("extension", extension);
+        put(',');
+        putMember("classifier", classifier);
+        if (isUseTimestamp()) {
+            put(',');
+            if (isTimestampFormatted()) {
+                timestamp.copyChars(formatTimestamp(lastModified));
+                putMember("lastModified", timestamp.get());
+            } else {
+                putText("\"lastModified\":");
+                putText(formatTimestamp(lastModified));
+            }
+        }
+        put('}');
+        put('\n');
+    }
+
+    private void putMember(String name, BytesRef value) throws IOException {
+        put('"');
+        putText(name);
+        put('"');
+        put(':');
+        if (value == null) {
+            putText("null");
+            return;
+        }
+        put('"');
+        byte[] bytes = value.bytes;
+        int start = value.offset;
+        int end = value.offset + value.length;
+        for (int i = start; i < end; i++) {
+            int b = bytes[i] & 0xFF;
+            if (b == '"' || b == '\\' || b < 0x20) {
+                put(bytes, start, i - start);
+                start = i + 1;
+                put('\\');
+                if (b < 0x20) {
+                    putText("u00");
+                    put((char) HEX[b >> 4]);
+                    put((char) HEX[b & 0xF]);
+                } else {
+                    put((char) b);
+                }
+            }
+        }
+        put(bytes, start, end - start);
+        put('"');
+    }
+}
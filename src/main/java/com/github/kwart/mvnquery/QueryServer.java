@@ -0,0 +1,247 @@
+package com.github.kwart.mvnquery;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+
+import com.beust.jcommander.ParameterException;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Simple HTTP server which keeps the repository indexes open and runs queries on it. The query filters are passed as URL
+ * parameters named by the command line options, e.g. {@code GET /query?groupId=org.example&lastDays=0&use-timestamp}.
+ * The {@link Metrics} are exposed in the Prometheus text format on {@code GET /metrics}. When a refreshed index is
+ * published (see {@code --refresh}), the server reopens it; the queries running meanwhile finish on the previous one.
+ */
+public class QueryServer implements Closeable {
+
+    private static final long REFRESH_CHECK_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1L);
+
+    private final MvnQuery mvnQuery;
+    private final HttpServer httpServer;
+    private final ExecutorService executor;
+    private final ReadWriteLock contextsLock = new ReentrantReadWriteLock();
+
+    private volatile List<RepositoryIndex> indexes;
+    private volatile long lastRefreshCheck = System.nanoTime();
+
+    QueryServer(MvnQuery mvnQuery, List<RepositoryIndex> indexes, int port) throws IOException {
+        this.mvnQuery = mvnQuery;
+        this.indexes = indexes;
+        this.httpServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        this.executor = Executors.newVirtualThreadPerTaskExecutor();
+        httpServer.setExecutor(executor);
+        httpServer.createContext("/query", this::handleQuery);
+        httpServer.createContext("/metrics", this::handleMetrics);
+    }
+
+    void start() {
+        httpServer.start();
+    }
+
+    int getPort() {
+        return httpServer.getAddress().getPort();
+    }
+
+    @Override
+    public void close() {
+        httpServer.stop(0);
+        executor.shutdown();
+        contextsLock.writeLock().lock();
+        try {
+            mvnQuery.closeIndexes(indexes);
+        } catch (IOException e) {
+            // ignore
+        } finally {
+            contextsLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Switches to the refreshed indexes (if any were published). The previous contexts are closed once the queries
+     * using them finish.
+     */
+    private synchronized void reopenRefreshed() throws IOException {
+        long now = System.nanoTime();
+        if (now - lastRefreshCheck < REFRESH_CHECK_INTERVAL_NANOS) {
+            return;
+        }
+        lastRefreshCheck = now;
+        List<RepositoryIndex> reopened = mvnQuery.reopenRefreshed(indexes);
+        if (reopened == null) {
+            return;
+        }
+        List<RepositoryIndex> previous;
+        contextsLock.writeLock().lock();
+        try {
+            previous = indexes;
+            indexes = reopened;
+        } finally {
+            contextsLock.writeLock().unlock();
+        }
+        List<RepositoryIndex> replaced = new ArrayList<>();
+        for (int i = 0; i < previous.size(); i++) {
+            if (previous.get(i) != reopened.get(i)) {
+                replaced.add(previous.get(i));
+            }
+        }
+        mvnQuery.closeIndexes(replaced);
+    }
+
+    private void handleQuery(HttpExchange exchange) throws IOException {
+        mvnQuery.getMetrics().count("server_requests", 1L);
+        try {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                sendError(exchange, HttpURLConnection.HTTP_BAD_METHOD, "Only GET requests are supported");
+                return;
+            }
+            Config queryConfig;
+            try {
+                queryConfig = Config.parseQueryArgs(toArgs(exchange.getRequestURI().getRawQuery()));
+                MvnQuery.validateQuery(queryConfig);
+            } catch (ParameterException | IllegalArgumentException e) {
+                sendError(exchange, HttpURLConnection.HTTP_BAD_REQUEST, e.getMessage());
+                return;
+            }
+            reopenRefreshed();
+            exchange.getResponseHeaders().set("Content-Type", SummaryCollector.isSummary(queryConfig)
+                    ? "text/plain; charset=UTF-8"
+                    : ResultWriter.getContentType(queryConfig));
+            ResponseBody body = new ResponseBody(exchange);
+            contextsLock.readLock().lock();
+            try {
+                mvnQuery.query(indexes, queryConfig, body);
+                body.close();
+            } catch (IOException | RuntimeException e) {
+                if (body.isCommitted()) {
+                    // the status is sent already, the client gets a truncated response
+                    throw e;
+                }
+                if (e instanceof IllegalArgumentException) {
+                    // e.g. a class name matching too many artifacts
+                    sendError(exchange, HttpURLConnection.HTTP_BAD_REQUEST, e.getMessage());
+                } else {
+                    sendError(exchange, HttpURLConnection.HTTP_INTERNAL_ERROR, "Query failed: " + e);
+                }
+            } finally {
+                contextsLock.readLock().unlock();
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void handleMetrics(HttpExchange exchange) throws IOException {
+        try {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                sendError(exchange, HttpURLConnection.HTTP_BAD_METHOD, "Only GET requests are supported");
+                return;
+            }
+            byte[] body = mvnQuery.getMetrics().toPrometheus().getBytes(UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=UTF-8");
+            exchange.sendResponseHeaders(HttpURLConnection.HTTP_OK, body.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(body);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static List<String> toArgs(String rawQuery) {
+        List<String> args = new ArrayList<>();
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return args;
+        }
+        for (String param : rawQuery.split("&")) {
+            if (param.isEmpty()) {
+                continue;
+            }
+            int idx = param.indexOf('=');
+            String name = URLDecoder.decode(idx < 0 ? param : param.substring(0, idx), UTF_8);
+            String value = idx < 0 ? null : URLDecoder.decode(param.substring(idx + 1), UTF_8);
+            String option = (name.length() == 1 ? "-" : "--") + name;
+            if (Config.isFlagOption(option)) {
+                if (value == null || value.isEmpty() || Boolean.parseBoolean(value)) {
+                    args.add(option);
+                }
+            } else {
+                args.add(option);
+                args.add(value == null ? "" : value);
+            }
+        }
+        return args;
+    }
+
+    /**
+     * Response body which sends the {@code 200 OK} status with the first written bytes, so a query failing before it
+     * writes anything (e.g. while building the query or looking up a class) is still answered by an error status.
+     */
+    private static final class ResponseBody extends OutputStream {
+
+        private final HttpExchange exchange;
+        private OutputStream out;
+
+        ResponseBody(HttpExchange exchange) {
+            this.exchange = exchange;
+        }
+
+        boolean isCommitted() {
+            return out != null;
+        }
+
+        private OutputStream out() throws IOException {
+            if (out == null) {
+                exchange.sendResponseHeaders(HttpURLConnection.HTTP_OK, 0);
+                out = exchange.getResponseBody();
+            }
+            return out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out().write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out().write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (out != null) {
+                out.flush();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            out().close();
+        }
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        byte[] body = (message + "\n").getBytes(UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=UTF-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(body);
+        }
+    }
+}
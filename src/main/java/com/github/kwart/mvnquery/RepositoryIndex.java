@@ -0,0 +1,170 @@
+package com.github.kwart.mvnquery;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.store.MMapDirectory;
+import org.apache.maven.index.ArtifactInfo;
+import org.apache.maven.index.Indexer;
+import org.apache.maven.index.context.IndexCreator;
+import org.apache.maven.index.context.IndexingContext;
+
+/**
+ * Opened index of a repository as used by the queries: the searcher with the repository URL and the index directory.
+ * <p>
+ * It either wraps the {@link IndexingContext} created by the {@link Indexer}, which holds the {@code IndexWriter}
+ * and is used by the index updates, or it's opened read-only ({@code --read-only}) on the last commit of an existing
+ * index through a {@link MMapDirectory}. The read-only index doesn't take the Lucene write lock, so any number of
+ * processes can query the same index (even while another process updates it), and a single {@link IndexSearcher} is
+ * shared by all the queries.
+ */
+final class RepositoryIndex implements Closeable {
+
+    private final String repositoryUrl;
+    private final File indexDir;
+    private final List<IndexCreator> indexCreators;
+    // writable index
+    private final IndexingContext indexingContext;
+    private final Indexer indexer;
+    // read-only index
+    private final MMapDirectory directory;
+    private final DirectoryReader reader;
+    private final IndexSearcher searcher;
+    // class index, opened by the first class query
+    private ClassIndex.Searcher classIndexSearcher;
+    private boolean classIndexOpened;
+
+    private RepositoryIndex(String repositoryUrl, File indexDir, List<IndexCreator> indexCreators,
+            IndexingContext indexingContext, Indexer indexer, MMapDirectory directory, DirectoryReader reader) {
+        this.repositoryUrl = repositoryUrl;
+        this.indexDir = indexDir;
+        this.indexCreators = indexCreators;
+        this.indexingContext = indexingContext;
+        this.indexer = indexer;
+        this.directory = directory;
+        this.reader = reader;
+        this.searcher = reader == null ? null : new IndexSearcher(reader);
+    }
+
+    /**
+     * Wraps the indexing context created by the given indexer, it's closed by the indexer.
+     */
+    static RepositoryIndex of(IndexingContext indexingContext, Indexer indexer) {
+        return new RepositoryIndex(indexingContext.getRepositoryUrl(), indexingContext.getIndexDirectoryFile(),
+                indexingContext.getIndexCreators(), indexingContext, indexer, null, null);
+    }
+
+    /**
+     * Opens the index in the given directory read-only.
+     *
+     * @throws IOException when there is no index in the directory
+     */
+    static RepositoryIndex openReadOnly(String repositoryUrl, File indexDir) throws IOException {
+        if (!indexDir.isDirectory()) {
+            throw noIndex(indexDir);
+        }
+        MMapDirectory directory = new MMapDirectory(indexDir.toPath());
+        try {
+            if (!DirectoryReader.indexExists(directory)) {
+                throw noIndex(indexDir);
+            }
+            List<IndexCreator> indexCreators = List.of(new CustomArtifactInfoIndexCreator());
+            return new RepositoryIndex(repositoryUrl, indexDir, indexCreators, null, null, directory,
+                    DirectoryReader.open(directory));
+        } catch (IOException | RuntimeException e) {
+            directory.close();
+            throw e;
+        }
+    }
+
+    String getRepositoryUrl() {
+        return repositoryUrl;
+    }
+
+    File getIndexDirectoryFile() {
+        return indexDir;
+    }
+
+    /**
+     * Returns the indexing context used by the index updates, or {@code null} when the index is read-only.
+     */
+    IndexingContext getIndexingContext() {
+        return indexingContext;
+    }
+
+    IndexSearcher acquireIndexSearcher() throws IOException {
+        return indexingContext != null ? indexingContext.acquireIndexSearcher() : searcher;
+    }
+
+    void releaseIndexSearcher(IndexSearcher indexSearcher) throws IOException {
+        if (indexingContext != null) {
+            indexingContext.releaseIndexSearcher(indexSearcher);
+        }
+    }
+
+    /**
+     * Returns the class index belonging to this index, or {@code null} when there is none. It's opened by the first
+     * call and kept open until this index is closed, the class index of a newer generation comes with its own index.
+     */
+    synchronized ClassIndex.Searcher getClassIndexSearcher() throws IOException {
+        if (!classIndexOpened) {
+            classIndexSearcher = ClassIndex.openSearcher(indexDir);
+            classIndexOpened = true;
+        }
+        return classIndexSearcher;
+    }
+
+    /**
+     * Reads the artifact from the stored fields of the given document by the index creators of the index, or returns
+     * {@code null} when the document is not an artifact.
+     */
+    ArtifactInfo constructArtifactInfo(Document doc) {
+        if (doc.get(ArtifactInfo.UINFO) == null) {
+            return null;
+        }
+        ArtifactInfo ai = new ArtifactInfo();
+        boolean constructed = false;
+        for (IndexCreator indexCreator : indexCreators) {
+            constructed |= indexCreator.updateArtifactInfo(doc, ai);
+        }
+        return constructed ? ai : null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        ClassIndex.Searcher classes;
+        synchronized (this) {
+            classes = classIndexSearcher;
+            classIndexSearcher = null;
+        }
+        try {
+            if (classes != null) {
+                classes.close();
+            }
+        } finally {
+            if (indexingContext != null) {
+                indexer.closeIndexingContext(indexingContext, false);
+            } else {
+                try {
+                    reader.close();
+                } finally {
+                    directory.close();
+                }
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "RepositoryIndex[" + repositoryUrl + ", " + indexDir + (indexingContext == null ? ", read-only]" : "]");
+    }
+
+    private static IOException noIndex(File indexDir) {
+        return new IOException("No index found in " + indexDir + ", run MvnQuery without --read-only to create it");
+    }
+}
@@ -0,0 +1,240 @@
+package com.github.kwart.mvnquery;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+
+/**
+ * On-disk cache of the query output in the {@code query-cache} directory of a repository. An entry holds the exact bytes
+ * written for a query and its key is a hash of the query, the output options and the version of every searched index
+ * snapshot, so an entry is never served for a different index content. The entries are evicted in the least recently used
+ * order when the cache grows over its size limit and the whole cache is removed when an index update changes the index.
+ */
+class ResultCache {
+
+    private static final String DIRNAME_CACHE = "query-cache";
+    private static final String SUFFIX = ".bin";
+    private static final String SUFFIX_TMP = ".tmp";
+
+    private final Path cacheDir;
+    private final long maxBytes;
+
+    ResultCache(File repoDir, long maxBytes) {
+        this.cacheDir = repoDir.toPath().resolve(DIRNAME_CACHE);
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Returns the cache key of the given query, or {@code null} when the searched index snapshot can't be identified.
+     */
+    static String key(Query query, Config queryConfig, List<RepositoryIndex> indexes) throws IOException {
+        StringBuilder sb = new StringBuilder(query.toString());
+        sb.append('\n').append(ResultWriter.getFormat(queryConfig)).append(' ').append(queryConfig.isUseTimestamp())
+                .append(' ').append(queryConfig.getTimestampFormat()).append(' ').append(queryConfig.isDedup()).append(' ')
+                .append(queryConfig.getSort()).append(' ').append(queryConfig.getLimit()).append(' ')
+                .append(queryConfig.isLatest()).append(' ').append(queryConfig.isCount()).append(' ')
+                .append(queryConfig.getFacet());
+        for (RepositoryIndex index : indexes) {
+            IndexSearcher searcher = index.acquireIndexSearcher();
+            try {
+                IndexReader reader = searcher.getIndexReader();
+                if (!(reader instanceof DirectoryReader directoryReader)) {
+                    return null;
+                }
+                sb.append('\n').append(index.getRepositoryUrl()).append(' ')
+                        .append(index.getIndexDirectoryFile()).append(' ').append(directoryReader.getVersion());
+            } finally {
+                index.releaseIndexSearcher(searcher);
+            }
+        }
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(sb.toString().getBytes(UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Copies the cached output to the given stream.
+     *
+     * @return {@code false} when the entry is not cached
+     */
+    boolean copyTo(String key, OutputStream out) throws IOException {
+        Path file = cacheDir.resolve(key + SUFFIX);
+        try (InputStream in = Files.newInputStream(file)) {
+            // the modification time is the last access time for the eviction
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            in.transferTo(out);
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+        out.flush();
+        return true;
+    }
+
+    /**
+     * Returns a stream which writes to the given one and captures the output for the cache. The entry is only stored when
+     * {@link Capture#commit()} is called before the stream is closed.
+     */
+    Capture capture(String key, OutputStream out) throws IOException {
+        Files.createDirectories(cacheDir);
+        return new Capture(key, out, Files.createTempFile(cacheDir, key, SUFFIX_TMP));
+    }
+
+    /**
+     * Removes the result cache of the given repository.
+     */
+    static void clear(File repoDir) throws IOException {
+        Path cacheDir = repoDir.toPath().resolve(DIRNAME_CACHE);
+        if (!Files.isDirectory(cacheDir)) {
+            return;
+        }
+        try (Stream<Path> files = Files.list(cacheDir)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    /**
+     * Removes the least recently used entries until the cache fits into its size limit.
+     */
+    private void evict() throws IOException {
+        List<Path> entries = new ArrayList<>();
+        long size = 0L;
+        try (Stream<Path> files = Files.list(cacheDir)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                if (file.getFileName().toString().endsWith(SUFFIX)) {
+                    entries.add(file);
+                    size += sizeOf(file);
+                }
+            }
+        }
+        if (size <= maxBytes) {
+            return;
+        }
+        entries.sort(Comparator.comparingLong(ResultCache::lastAccess));
+        for (Path file : entries) {
+            if (size <= maxBytes) {
+                break;
+            }
+            size -= sizeOf(file);
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static long sizeOf(Path file) {
+        try {
+            return Files.size(file);
+        } catch (IOException e) {
+            // removed by another process meanwhile
+            return 0L;
+        }
+    }
+
+    private static long lastAccess(Path file) {
+        try {
+            return Files.getLastModifiedTime(file).toMillis();
+        } catch (IOException e) {
+            return 0L;
+        }
+    }
+
+    /**
+     * Output stream which writes to the query output and to a temporary cache file. The capturing stops when the output
+     * doesn't fit into the cache.
+     */
+    final class Capture extends OutputStream {
+
+        private final String key;
+        private final OutputStream out;
+        private final Path tmpFile;
+        private OutputStream fileOut;
+        private long size;
+
+        private Capture(String key, OutputStream out, Path tmpFile) throws IOException {
+            this.key = key;
+            this.out = out;
+            this.tmpFile = tmpFile;
+            this.fileOut = Files.newOutputStream(tmpFile);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            if (fileOut != null) {
+                size += len;
+                if (size > maxBytes) {
+                    abort();
+                } else {
+                    fileOut.write(b, off, len);
+                }
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        /**
+         * Stores the captured output as the cache entry.
+         */
+        void commit() throws IOException {
+            if (fileOut == null) {
+                return;
+            }
+            fileOut.close();
+            fileOut = null;
+            try {
+                Files.move(tmpFile, cacheDir.resolve(key + SUFFIX), StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } catch (NoSuchFileException e) {
+                // the cache was cleared by an index update meanwhile
+                return;
+            }
+            evict();
+        }
+
+        /**
+         * Drops the captured output unless it was committed. The query output stream is not closed.
+         */
+        @Override
+        public void close() throws IOException {
+            abort();
+        }
+
+        private void abort() throws IOException {
+            if (fileOut != null) {
+                fileOut.close();
+                fileOut = null;
+                Files.deleteIfExists(tmpFile);
+            }
+        }
+    }
+}
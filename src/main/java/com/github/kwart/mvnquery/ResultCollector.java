@@ -0,0 +1,200 @@
+package com.github.kwart.mvnquery;
+
+import static com.github.kwart.mvnquery.CustomArtifactInfoIndexCreator.DV_ARTIFACT_ID;
+import static com.github.kwart.mvnquery.CustomArtifactInfoIndexCreator.DV_CLASSIFIER;
+import static com.github.kwart.mvnquery.CustomArtifactInfoIndexCreator.DV_EXTENSION;
+import static com.github.kwart.mvnquery.CustomArtifactInfoIndexCreator.DV_GROUP_ID;
+import static com.github.kwart.mvnquery.CustomArtifactInfoIndexCreator.DV_LAST_MODIFIED;
+import static com.github.kwart.mvnquery.CustomArtifactInfoIndexCreator.DV_VERSION;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.SortedDocValues;
+import org.apache.lucene.index.StoredFields;
+import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.SimpleCollector;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefBuilder;
+import org.apache.maven.index.ArtifactInfo;
+
+/**
+ * Collects query hits and writes them to a {@link ResultWriter} straight from the DocValues columns written by
+ * {@link CustomArtifactInfoIndexCreator}, so no {@link ArtifactInfo} is materialized. Documents indexed without the
+ * columns (an older index layout) are loaded from the stored fields. The rows are tagged by the given tag (if not
+ * {@code null}) or, for merged lookups of more queries, by the tags of the queries which asked for the hit's
+ * groupId:artifactId, or by the tags given with the hit. When {@link Metrics} are given, the decoding and writing of each hit is timed.
+ */
+class ResultCollector extends SimpleCollector {
+
+    private final RepositoryIndex index;
+    private final ResultWriter writer;
+    private final BytesRef tag;
+    private final Map<BytesRef, List<BytesRef>> tagsByGa;
+    private final BytesRefBuilder gaKey = new BytesRefBuilder();
+    private final Metrics.Timer decodeTimer;
+    private final Metrics.Timer writeTimer;
+
+    private SortedDocValues groupIds;
+    private SortedDocValues artifactIds;
+    private SortedDocValues versions;
+    private SortedDocValues extensions;
+    private SortedDocValues classifiers;
+    private NumericDocValues lastModified;
+    private StoredFields storedFields;
+    private LeafReaderContext leaf;
+    private int lastDoc;
+    private List<BytesRef> hitTags;
+
+    private long hits;
+
+    ResultCollector(RepositoryIndex index, ResultWriter writer, String tag, Metrics metrics) {
+        this(index, writer, tag == null ? null : new BytesRef(tag), null, metrics);
+    }
+
+    /**
+     * Creates a collector which writes each hit once for every tag mapped to its GA (see {@link #gaKey(BytesRef, BytesRef)}),
+     * hits of other GAs are skipped.
+     */
+    ResultCollector(RepositoryIndex index, ResultWriter writer, Map<BytesRef, List<BytesRef>> tagsByGa,
+            Metrics metrics) {
+        this(index, writer, null, tagsByGa, metrics);
+    }
+
+    private ResultCollector(RepositoryIndex index, ResultWriter writer, BytesRef tag,
+            Map<BytesRef, List<BytesRef>> tagsByGa, Metrics metrics) {
+        this.index = index;
+        this.writer = writer;
+        this.tag = tag;
+        this.tagsByGa = tagsByGa;
+        this.decodeTimer = metrics != null ? metrics.timer("hit_decode") : null;
+        this.writeTimer = metrics != null ? metrics.timer("output_write") : null;
+    }
+
+    @Override
+    protected void doSetNextReader(LeafReaderContext context) throws IOException {
+        leaf = context;
+        lastDoc = -1;
+        LeafReader reader = context.reader();
+        groupIds = DocValues.getSorted(reader, DV_GROUP_ID);
+        artifactIds = DocValues.getSorted(reader, DV_ARTIFACT_ID);
+        versions = DocValues.getSorted(reader, DV_VERSION);
+        extensions = DocValues.getSorted(reader, DV_EXTENSION);
+        classifiers = DocValues.getSorted(reader, DV_CLASSIFIER);
+        lastModified = DocValues.getNumeric(reader, DV_LAST_MODIFIED);
+        storedFields = reader.storedFields();
+    }
+
+    @Override
+    public void collect(int doc) throws IOException {
+        hits++;
+        long start = decodeTimer != null ? System.nanoTime() : 0L;
+        if (groupIds.advanceExact(doc) && artifactIds.advanceExact(doc) && versions.advanceExact(doc)) {
+            BytesRef groupId = groupIds.lookupOrd(groupIds.ordValue());
+            BytesRef artifactId = artifactIds.lookupOrd(artifactIds.ordValue());
+            BytesRef version = versions.lookupOrd(versions.ordValue());
+            BytesRef extension = lookup(extensions, doc);
+            BytesRef classifier = lookup(classifiers, doc);
+            long modified = lastModified.advanceExact(doc) ? lastModified.longValue() : 0L;
+            start = decoded(start);
+            if (tagsByGa == null && hitTags == null) {
+                writer.write(tag, groupId, artifactId, version, extension, classifier, modified);
+            } else {
+                for (BytesRef gaTag : tags(groupId, artifactId)) {
+                    writer.write(gaTag, groupId, artifactId, version, extension, classifier, modified);
+                }
+            }
+        } else {
+            ArtifactInfo ai = index.constructArtifactInfo(storedFields.document(doc));
+            start = decoded(start);
+            if (ai != null) {
+                if (tagsByGa == null && hitTags == null) {
+                    writer.write(tag, ai);
+                } else {
+                    for (BytesRef gaTag : tags(new BytesRef(ai.getGroupId()), new BytesRef(ai.getArtifactId()))) {
+                        writer.write(gaTag, ai);
+                    }
+                }
+            }
+        }
+        if (writeTimer != null) {
+            writeTimer.stop(start);
+        }
+    }
+
+    /**
+     * Writes a hit of an already collected (e.g. sorted) result. The DocValues iterators only move forward, so they are
+     * recreated when the hits don't come in the index order.
+     */
+    void collect(LeafReaderContext context, int doc) throws IOException {
+        if (context != leaf || doc <= lastDoc) {
+            doSetNextReader(context);
+        }
+        lastDoc = doc;
+        collect(doc);
+    }
+
+    /**
+     * Writes a hit of an already collected result once for every given tag.
+     */
+    void collect(LeafReaderContext context, int doc, List<BytesRef> tags) throws IOException {
+        hitTags = tags;
+        try {
+            collect(context, doc);
+        } finally {
+            hitTags = null;
+        }
+    }
+
+    @Override
+    public ScoreMode scoreMode() {
+        return ScoreMode.COMPLETE_NO_SCORES;
+    }
+
+    long getHitCount() {
+        return hits;
+    }
+
+    /**
+     * Returns the key of the given groupId:artifactId in the tag map.
+     */
+    static BytesRef gaKey(BytesRef groupId, BytesRef artifactId) {
+        BytesRefBuilder key = new BytesRefBuilder();
+        key.append(groupId);
+        key.append((byte) 0);
+        key.append(artifactId);
+        return key.toBytesRef();
+    }
+
+    private List<BytesRef> tags(BytesRef groupId, BytesRef artifactId) {
+        if (hitTags != null) {
+            return hitTags;
+        }
+        gaKey.clear();
+        gaKey.append(groupId);
+        gaKey.append((byte) 0);
+        gaKey.append(artifactId);
+        return tagsByGa.getOrDefault(gaKey.get(), List.of());
+    }
+
+    /**
+     * Records the decoding time (when timed) and returns the start of writing.
+     */
+    private long decoded(long start) {
+        if (decodeTimer == null) {
+            return 0L;
+        }
+        long now = System.nanoTime();
+        decodeTimer.record(now - start);
+        return now;
+    }
+
+    private static BytesRef lookup(SortedDocValues values, int doc) throws IOException {
+        return values.advanceExact(doc) ? values.lookupOrd(values.ordValue()) : null;
+    }
+}
@@ -0,0 +1,262 @@
+package com.github.kwart.mvnquery;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefBuilder;
+import org.apache.maven.index.ArtifactInfo;
+
+/**
+ * Writes query results to an output stream in the format selected by the {@code --format} option (see
+ * {@link #create(OutputStream, Config)}). The subclasses format the rows into one reusable byte buffer and the buffer is
+ * written to the underlying stream in large blocks. Values which are already UTF-8 encoded (e.g. read from the index
+ * DocValues) are copied to the buffer without decoding. The stream is only flushed when {@link #flush()} is called or after
+ * every {@code flushInterval} rows (if the interval is positive).
+ * <p>
+ * The writer is shared by the searches running in parallel over more repositories, so a whole row is written under the
+ * writer lock. Rows may be prefixed by a tag (the batch query id and/or the repository URL) and, when de-duplication is
+ * enabled, a row with coordinates which were already written is skipped.
+ */
+public abstract class ResultWriter implements Flushable {
+
+    static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final Map<String, String> CONTENT_TYPES = Map.of("text", "text/plain; charset=UTF-8", "ndjson",
+            "application/x-ndjson", "csv", "text/csv; charset=UTF-8", "columnar", "application/octet-stream");
+
+    private final OutputStream out;
+    private final boolean useTimestamp;
+    private final DateTimeFormatter timestampFormatter;
+    private final int flushInterval;
+
+    private final StringBuilder text = new StringBuilder(64);
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private final Set<BytesRef> written;
+    private final BytesRefBuilder key = new BytesRefBuilder();
+    private final CharsetEncoder encoder = UTF_8.newEncoder().onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+    private long rows;
+
+    protected ResultWriter(OutputStream out, Config queryConfig) {
+        this.out = out;
+        this.useTimestamp = queryConfig.isUseTimestamp();
+        this.timestampFormatter = MvnQuery.createTimestampFormatter(queryConfig);
+        this.flushInterval = queryConfig.getFlushInterval();
+        this.written = queryConfig.isDedup() ? new HashSet<>() : null;
+    }
+
+    /**
+     * Creates a writer of the output format configured by the {@code --format} option.
+     *
+     * @throws IllegalArgumentException when the format is not supported
+     */
+    public static ResultWriter create(OutputStream out, Config queryConfig) {
+        return switch (getFormat(queryConfig)) {
+            case "ndjson" -> new NdjsonResultWriter(out, queryConfig);
+            case "csv" -> new CsvResultWriter(out, queryConfig);
+            case "columnar" -> new ColumnarResultWriter(out, queryConfig);
+            default -> new TextResultWriter(out, queryConfig);
+        };
+    }
+
+    /**
+     * Returns the configured output format in lower case.
+     *
+     * @throws IllegalArgumentException when the format is not supported
+     */
+    static String getFormat(Config queryConfig) {
+        String format = queryConfig.getFormat() == null ? "text" : queryConfig.getFormat().toLowerCase(Locale.ROOT);
+        if (!CONTENT_TYPES.containsKey(format)) {
+            throw new IllegalArgumentException(
+                    "Unsupported output format: " + queryConfig.getFormat() + " (use text, ndjson, csv or columnar)");
+        }
+        return format;
+    }
+
+    /**
+     * Returns the HTTP content type of the configured output format.
+     */
+    static String getContentType(Config queryConfig) {
+        return CONTENT_TYPES.get(getFormat(queryConfig));
+    }
+
+    /**
+     * Writes coordinates of the given artifact as a single result row. The tag may be {@code null}.
+     */
+    public synchronized void write(BytesRef tag, ArtifactInfo ai) throws IOException {
+        write(tag, toBytes(ai.getGroupId()), toBytes(ai.getArtifactId()), toBytes(ai.getVersion()),
+                toBytes(ai.getFileExtension()), toBytes(ai.getClassifier()), ai.getLastModified());
+    }
+
+    /**
+     * Writes a single result row from UTF-8 encoded values. The tag, extension and classifier may be {@code null}.
+     */
+    public synchronized void write(BytesRef tag, BytesRef groupId, BytesRef artifactId, BytesRef version, BytesRef extension,
+            BytesRef classifier, long lastModified) throws IOException {
+        if (written != null && isDuplicate(groupId, artifactId, version, extension, classifier)) {
+            return;
+        }
+        writeRow(tag, groupId, artifactId, version, extension, classifier, lastModified);
+        rows++;
+        if (flushInterval > 0 && rows % flushInterval == 0) {
+            flush();
+        }
+    }
+
+    public synchronized long getRowCount() {
+        return rows;
+    }
+
+    @Override
+    public synchronized void flush() throws IOException {
+        beforeFlush();
+        drain();
+        out.flush();
+    }
+
+    /**
+     * Formats a single row into the buffer.
+     */
+    protected abstract void writeRow(BytesRef tag, BytesRef groupId, BytesRef artifactId, BytesRef version,
+            BytesRef extension, BytesRef classifier, long lastModified) throws IOException;
+
+    /**
+     * Called before the buffer is written to the stream on {@link #flush()}, e.g. to format rows which are still pending.
+     */
+    protected void beforeFlush() throws IOException {
+    }
+
+    protected final boolean isUseTimestamp() {
+        return useTimestamp;
+    }
+
+    protected final boolean isTimestampFormatted() {
+        return timestampFormatter != null;
+    }
+
+    /**
+     * Returns the timestamp formatted by the {@code --timestamp-format} or as milliseconds when no format is set. The
+     * returned sequence is reused by the next call.
+     */
+    protected final CharSequence formatTimestamp(long lastModified) {
+        text.setLength(0);
+        if (timestampFormatter != null) {
+            timestampFormatter.formatTo(Instant.ofEpochMilli(lastModified), text);
+        } else {
+            text.append(lastModified);
+        }
+        return text;
+    }
+
+    protected final void put(char asciiChar) throws IOException {
+        if (!buffer.hasRemaining()) {
+            drain();
+        }
+        buffer.put((byte) asciiChar);
+    }
+
+    protected final void put(BytesRef value) throws IOException {
+        if (value != null) {
+            put(value.bytes, value.offset, value.length);
+        }
+    }
+
+    protected final void put(byte[] bytes, int offset, int length) throws IOException {
+        if (length > buffer.remaining()) {
+            drain();
+            if (length > buffer.capacity()) {
+                out.write(bytes, offset, length);
+                return;
+            }
+        }
+        buffer.put(bytes, offset, length);
+    }
+
+    protected final void putInt(int value) throws IOException {
+        if (buffer.remaining() < Integer.BYTES) {
+            drain();
+        }
+        buffer.putInt(value);
+    }
+
+    protected final void putLong(long value) throws IOException {
+        if (buffer.remaining() < Long.BYTES) {
+            drain();
+        }
+        buffer.putLong(value);
+    }
+
+    protected final void putText(CharSequence value) throws IOException {
+        if (value == null) {
+            value = "null";
+        }
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c >= 0x80 || !buffer.hasRemaining()) {
+                encode(value, i);
+                return;
+            }
+            buffer.put((byte) c);
+        }
+    }
+
+    private boolean isDuplicate(BytesRef groupId, BytesRef artifactId, BytesRef version, BytesRef extension,
+            BytesRef classifier) {
+        key.clear();
+        appendKey(groupId);
+        appendKey(artifactId);
+        appendKey(version);
+        appendKey(extension);
+        appendKey(classifier);
+        if (written.contains(key.get())) {
+            return true;
+        }
+        written.add(key.toBytesRef());
+        return false;
+    }
+
+    private void appendKey(BytesRef value) {
+        if (value != null) {
+            key.append(value);
+        }
+        key.append((byte) 0);
+    }
+
+    private static BytesRef toBytes(String value) {
+        return value == null ? null : new BytesRef(value);
+    }
+
+    private void encode(CharSequence value, int start) throws IOException {
+        CharBuffer chars = CharBuffer.wrap(value, start, value.length());
+        encoder.reset();
+        while (encoder.encode(chars, buffer, true).isOverflow()) {
+            drain();
+        }
+        while (encoder.flush(buffer).isOverflow()) {
+            drain();
+        }
+    }
+
+    private void drain() throws IOException {
+        if (buffer.position() > 0) {
+            out.write(buffer.array(), 0, buffer.position());
+            buffer.clear();
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.github.kwart.mvnquery;
+
+import static com.github.kwart.mvnquery.CustomArtifactInfoIndexCreator.DV_ARTIFACT_ID;
+import static com.github.kwart.mvnquery.CustomArtifactInfoIndexCreator.DV_CLASSIFIER;
+import static com.github.kwart.mvnquery.CustomArtifactInfoIndexCreator.DV_EXTENSION;
+import static com.github.kwart.mvnquery.CustomArtifactInfoIndexCreator.DV_GROUP_ID;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.SortedDocValues;
+import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.SimpleCollector;
+
+/**
+ * Counts the hits per value of a facet field ({@code --facet}) from the DocValues columns written by
+ * {@link CustomArtifactInfoIndexCreator}, so no document is loaded. The hits are counted per ordinal of the segment and
+ * the ordinals are resolved to the values once per segment. The hits without the value are counted under the empty
+ * string.
+ */
+class SummaryCollector extends SimpleCollector {
+
+    private static final Map<String, String> FACET_FIELDS = Map.of("extension", DV_EXTENSION, "classifier", DV_CLASSIFIER,
+            "groupId", DV_GROUP_ID, "artifactId", DV_ARTIFACT_ID);
+
+    private final String field;
+    private final Map<String, Long> counts = new HashMap<>();
+
+    private SortedDocValues values;
+    private int[] ordCounts = new int[0];
+    private long missing;
+    private long hits;
+
+    /**
+     * @param field the DocValues field, see {@link #getFacetField(Config)}
+     */
+    SummaryCollector(String field) {
+        this.field = field;
+    }
+
+    /**
+     * Returns {@code true} when the given configuration asks for the hit counts instead of the hits.
+     */
+    static boolean isSummary(Config queryConfig) {
+        return queryConfig.isCount() || queryConfig.getFacet() != null;
+    }
+
+    /**
+     * Returns the DocValues field of the configured facet, or {@code null} when no facet is configured.
+     *
+     * @throws IllegalArgumentException when the facet is not supported
+     */
+    static String getFacetField(Config queryConfig) {
+        String facet = queryConfig.getFacet();
+        if (facet == null) {
+            return null;
+        }
+        String field = FACET_FIELDS.get(facet);
+        if (field == null) {
+            throw new IllegalArgumentException(
+                    "Unsupported facet: " + facet + " (use extension, classifier, groupId or artifactId)");
+        }
+        return field;
+    }
+
+    @Override
+    protected void doSetNextReader(LeafReaderContext context) throws IOException {
+        flushSegment();
+        values = DocValues.getSorted(context.reader(), field);
+        int valueCount = values.getValueCount();
+        if (ordCounts.length < valueCount) {
+            ordCounts = new int[valueCount];
+        }
+    }
+
+    @Override
+    public void collect(int doc) throws IOException {
+        hits++;
+        if (values.advanceExact(doc)) {
+            ordCounts[values.ordValue()]++;
+        } else {
+            missing++;
+        }
+    }
+
+    @Override
+    public ScoreMode scoreMode() {
+        return ScoreMode.COMPLETE_NO_SCORES;
+    }
+
+    long getHitCount() {
+        return hits;
+    }
+
+    /**
+     * Returns the hit counts per value.
+     */
+    Map<String, Long> getCounts() throws IOException {
+        flushSegment();
+        if (missing > 0) {
+            counts.merge("", missing, Long::sum);
+            missing = 0L;
+        }
+        return counts;
+    }
+
+    private void flushSegment() throws IOException {
+        if (values == null) {
+            return;
+        }
+        int valueCount = values.getValueCount();
+        for (int ord = 0; ord < valueCount; ord++) {
+            if (ordCounts[ord] > 0) {
+                counts.merge(values.lookupOrd(ord).utf8ToString(), (long) ordCounts[ord], Long::sum);
+            }
+        }
+        Arrays.fill(ordCounts, 0, valueCount, 0);
+        values = null;
+    }
+}
@@ -0,0 +1,51 @@
+package com.github.kwart.mvnquery;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.apache.lucene.util.BytesRef;
+
+/**
+ * The default output format: one {@code groupId:artifactId:version:extension:classifier[:lastModified]} line per row,
+ * prefixed by the tag and a tab character when the row is tagged.
+ */
+class TextResultWriter extends ResultWriter {
+
+    TextResultWriter(OutputStream out, Config queryConfig) {
+        super(out, queryConfig);
+    }
+
+    @Override
+    protected void writeRow(BytesRef tag, BytesRef groupId, BytesRef artifactId, BytesRef version, BytesRef extension,
+            BytesRef classifier, long lastModified) throws IOException {
+        if (tag != null) {
+            put(tag);
+            put('\t');
+        }
+        putOrNull(groupId);
+        put(':');
+        putOrNull(artifactId);
+        put(':');
+        putOrNull(version);
+        put(':');
+        putOrNull(extension);
+        put(':');
+        put(classifier);
+        if (isUseTimestamp()) {
+            put(':');
+            putText(formatTimestamp(lastModified));
+        }
+        put('\n');
+    }
+
+    /**
+     * Writes a missing coordinate as {@code null}, like the original output did (only a missing classifier is empty).
+     */
+    private void putOrNull(BytesRef value) throws IOException {
+        if (value != null) {
+            put(value);
+        } else {
+            putText("null");
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.github.kwart.mvnquery;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.apache.lucene.util.BytesRef;
+
+/**
+ * Encodes Maven versions to byte sequences which sort (as unsigned bytes) in the Maven version order, so the versions can
+ * be sorted and compared directly on a {@code SortedDocValues} field or in a term range.
+ * <p>
+ * The order follows the generic version scheme of Maven Resolver: a version is split to numeric and textual items (on
+ * {@code .}, {@code -}, {@code _} and on digit/letter transitions), zero and release items ending a run are ignored, known
+ * qualifiers are ordered {@code alpha < beta < milestone < rc < snapshot < release < sp}, other strings sort after the
+ * qualifiers (case-insensitively) and numbers after strings. E.g. {@code 1.0-alpha-1 < 1.0-SNAPSHOT < 1.0 = 1.0.0 <
+ * 1.0-sp < 1.0.1}.
+ */
+final class VersionKey {
+
+    private static final Map<String, Integer> QUALIFIERS = Map.ofEntries(Map.entry("alpha", -5), Map.entry("beta", -4),
+            Map.entry("milestone", -3), Map.entry("cr", -2), Map.entry("rc", -2), Map.entry("snapshot", -1),
+            Map.entry("ga", 0), Map.entry("final", 0), Map.entry("release", 0), Map.entry("sp", 1));
+
+    // item kinds, the end of the version sorts after negative qualifiers and before everything else
+    private static final int KIND_QUALIFIER = 0x10;
+    private static final int END = 0x20;
+    private static final int KIND_RELEASE = 0x21;
+    private static final int KIND_SERVICE_PACK = 0x30;
+    private static final int KIND_STRING = 0x40;
+    private static final int KIND_NUMBER = 0x50;
+
+    private static final int MAX_DIGITS = 0xff;
+
+    private VersionKey() {
+    }
+
+    /**
+     * Returns the sort key of the given version.
+     */
+    static BytesRef of(String version) {
+        return new BytesRef(toBytes(version));
+    }
+
+    static byte[] toBytes(String version) {
+        List<String> items = split(version.toLowerCase(Locale.ROOT));
+        // drop zero and release items which end a run of numbers or qualifiers (1.0-alpha = 1-alpha, 1.0.0 = 1)
+        for (int i = items.size() - 1; i >= 0; i--) {
+            String item = items.get(i);
+            if (isPadding(item) && (i == items.size() - 1 || isDigit(item.charAt(0)) != isDigit(items.get(i + 1).charAt(0)))) {
+                items.remove(i);
+            }
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(version.length() + 8);
+        for (int i = 0; i < items.size(); i++) {
+            String item = items.get(i);
+            if (isDigit(item.charAt(0))) {
+                String digits = stripLeadingZeros(item);
+                int length = Math.min(digits.length(), MAX_DIGITS);
+                out.write(KIND_NUMBER);
+                out.write(length);
+                out.write(digits.getBytes(UTF_8), 0, length);
+            } else {
+                Integer qualifier = qualifier(item, i + 1 < items.size() && isDigit(items.get(i + 1).charAt(0)));
+                if (qualifier == null) {
+                    out.write(KIND_STRING);
+                    out.writeBytes(item.getBytes(UTF_8));
+                    out.write(0);
+                } else if (qualifier < 0) {
+                    out.write(KIND_QUALIFIER + 5 + qualifier);
+                } else {
+                    out.write(qualifier == 0 ? KIND_RELEASE : KIND_SERVICE_PACK);
+                }
+            }
+        }
+        out.write(END);
+        return out.toByteArray();
+    }
+
+    private static List<String> split(String version) {
+        List<String> items = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= version.length(); i++) {
+            char c = i < version.length() ? version.charAt(i) : '.';
+            boolean separator = c == '.' || c == '-' || c == '_';
+            if (start >= 0 && (separator || isDigit(c) != isDigit(version.charAt(start)))) {
+                items.add(version.substring(start, i));
+                start = -1;
+            }
+            if (!separator && start < 0) {
+                start = i;
+            }
+        }
+        return items;
+    }
+
+    private static Integer qualifier(String item, boolean followedByNumber) {
+        if (followedByNumber && item.length() == 1) {
+            switch (item.charAt(0)) {
+                case 'a':
+                    return -5;
+                case 'b':
+                    return -4;
+                case 'm':
+                    return -3;
+                default:
+                    break;
+            }
+        }
+        return QUALIFIERS.get(item);
+    }
+
+    private static boolean isPadding(String item) {
+        if (isDigit(item.charAt(0))) {
+            return stripLeadingZeros(item).isEmpty();
+        }
+        return Integer.valueOf(0).equals(QUALIFIERS.get(item));
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static String stripLeadingZeros(String digits) {
+        int i = 0;
+        while (i < digits.length() && digits.charAt(i) == '0') {
+            i++;
+        }
+        return digits.substring(i);
+    }
+}
@@ -0,0 +1,135 @@
+package com.github.kwart.mvnquery;
+
+import static com.github.kwart.mvnquery.CustomArtifactInfoIndexCreator.KW_VERSION_KEY;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TermRangeQuery;
+import org.apache.lucene.util.BytesRef;
+
+/**
+ * Compiles Maven version ranges to term range queries on the indexed {@link VersionKey} field, so the range is evaluated
+ * in the terms dictionary instead of by comparing the versions of all the hits. The Maven syntax is supported:
+ * <ul>
+ * <li>{@code [1.0,2.0)} - versions from 1.0 (inclusive) to 2.0 (exclusive), {@code (} and {@code )} exclude the bound,
+ * {@code [} and {@code ]} include it,</li>
+ * <li>{@code [1.0,)} or {@code (,2.0]} - ranges with a single bound,</li>
+ * <li>{@code [1.0]} - exactly the version 1.0 (or an equivalent one, e.g. 1.0.0),</li>
+ * <li>{@code (,1.0],[1.2,)} - union of more ranges.</li>
+ * </ul>
+ * A version without brackets matches the equivalent versions, as {@code [version]}.
+ */
+final class VersionRange {
+
+    private VersionRange() {
+    }
+
+    /**
+     * Returns the query matching the versions in the given range.
+     *
+     * @throws IllegalArgumentException when the range is not valid
+     */
+    static Query toQuery(String spec) {
+        String value = spec.trim();
+        if (value.isEmpty()) {
+            throw invalid(spec, "empty range");
+        }
+        if (value.charAt(0) != '[' && value.charAt(0) != '(') {
+            return exact(spec, value);
+        }
+        List<Query> restrictions = new ArrayList<>();
+        int pos = 0;
+        while (pos < value.length()) {
+            if (value.charAt(pos) != '[' && value.charAt(pos) != '(') {
+                throw invalid(spec, "a range has to start with [ or (");
+            }
+            int end = indexOfClose(value, pos);
+            if (end < 0) {
+                throw invalid(spec, "missing ] or )");
+            }
+            restrictions.add(restriction(spec, value.substring(pos, end + 1).trim()));
+            pos = end + 1;
+            if (pos < value.length()) {
+                if (value.charAt(pos) != ',') {
+                    throw invalid(spec, "ranges have to be separated by a comma");
+                }
+                pos = skipWhitespace(value, pos + 1);
+                if (pos == value.length()) {
+                    throw invalid(spec, "missing range after a comma");
+                }
+            }
+        }
+        if (restrictions.size() == 1) {
+            return restrictions.get(0);
+        }
+        BooleanQuery.Builder builder = new BooleanQuery.Builder();
+        for (Query restriction : restrictions) {
+            builder.add(restriction, Occur.SHOULD);
+        }
+        return builder.build();
+    }
+
+    private static Query restriction(String spec, String restriction) {
+        boolean lowerInclusive = restriction.charAt(0) == '[';
+        boolean upperInclusive = restriction.charAt(restriction.length() - 1) == ']';
+        String bounds = restriction.substring(1, restriction.length() - 1);
+        int comma = bounds.indexOf(',');
+        if (comma < 0) {
+            if (!lowerInclusive || !upperInclusive) {
+                throw invalid(spec, "a single version has to be enclosed in [ and ]");
+            }
+            return exact(spec, bounds.trim());
+        }
+        String lower = bounds.substring(0, comma).trim();
+        String upper = bounds.substring(comma + 1).trim();
+        if (upper.indexOf(',') >= 0) {
+            throw invalid(spec, "a range has at most two bounds");
+        }
+        BytesRef lowerKey = lower.isEmpty() ? null : VersionKey.of(lower);
+        BytesRef upperKey = upper.isEmpty() ? null : VersionKey.of(upper);
+        if (lowerKey != null && upperKey != null) {
+            int cmp = lowerKey.compareTo(upperKey);
+            if (cmp > 0 || cmp == 0 && !(lowerInclusive && upperInclusive)) {
+                throw invalid(spec, "the range doesn't contain any version");
+            }
+        }
+        return new TermRangeQuery(KW_VERSION_KEY, lowerKey, upperKey, lowerInclusive, upperInclusive);
+    }
+
+    private static Query exact(String spec, String version) {
+        if (version.isEmpty()) {
+            throw invalid(spec, "empty version");
+        }
+        return new TermQuery(new Term(KW_VERSION_KEY, VersionKey.of(version)));
+    }
+
+    private static int indexOfClose(String value, int from) {
+        for (int i = from + 1; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == ']' || c == ')') {
+                return i;
+            }
+            if (c == '[' || c == '(') {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    private static int skipWhitespace(String value, int pos) {
+        while (pos < value.length() && Character.isWhitespace(value.charAt(pos))) {
+            pos++;
+        }
+        return pos;
+    }
+
+    private static IllegalArgumentException invalid(String spec, String reason) {
+        return new IllegalArgumentException("Invalid version range: " + spec + " (" + reason + ")");
+    }
+}
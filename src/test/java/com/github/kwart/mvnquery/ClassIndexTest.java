@@ -0,0 +1,37 @@
+package com.github.kwart.mvnquery;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.File;
+
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.PrefixQuery;
+import org.apache.lucene.search.TermQuery;
+import org.junit.jupiter.api.Test;
+
+class ClassIndexTest {
+
+    @Test
+    void testQueries() {
+        assertThat(ClassIndex.toQuery("org.foo.Bar")).isEqualTo(new TermQuery(new Term("cn", "org.foo.Bar")));
+        assertThat(ClassIndex.toQuery("org/foo/Bar")).isEqualTo(new TermQuery(new Term("cn", "org.foo.Bar")));
+        assertThat(ClassIndex.toQuery("Bar")).isEqualTo(new TermQuery(new Term("sn", "Bar")));
+        assertThat(ClassIndex.toQuery("org.foo.*")).isEqualTo(new PrefixQuery(new Term("cn", "org.foo.")));
+        for (String name : new String[] { "", ".*", "org.", ".Bar", "org.*.Bar", "Ba?" }) {
+            assertThatThrownBy(() -> ClassIndex.toQuery(name)).as(name).isInstanceOf(IllegalArgumentException.class);
+        }
+    }
+
+    @Test
+    void testParseClassNames() {
+        assertThat(ClassIndex.parseClassNames("/org/foo/Bar\n/org/foo/Bar$Inner\n/org/foo/Bar$1\n/org/foo/Bar$Inner$2\n"))
+                .containsExactly("org.foo.Bar", "org.foo.Bar$Inner");
+    }
+
+    @Test
+    void testDir() {
+        assertThat(ClassIndex.dir(new File("repo", "index"))).isEqualTo(new File("repo", "classes").toPath());
+        assertThat(ClassIndex.dir(new File("repo", "index-2"))).isEqualTo(new File("repo", "classes-2").toPath());
+    }
+}
@@ -0,0 +1,45 @@
+package com.github.kwart.mvnquery;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class FileChecksumsTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testSha1() throws Exception {
+        byte[] content = new byte[100_001];
+        new Random(42).nextBytes(content);
+        Path file = Files.write(tempDir.resolve("test.jar"), content);
+        String expected = HexFormat.of().formatHex(MessageDigest.getInstance("SHA-1").digest(content));
+        assertThat(FileChecksums.sha1(file)).isEqualTo(expected);
+        // more mapped windows, the last one shorter
+        assertThat(FileChecksums.sha1(file, 4096)).isEqualTo(expected);
+        assertThat(FileChecksums.sha1(Files.write(tempDir.resolve("empty.jar"), new byte[0])))
+                .isEqualTo("da39a3ee5e6b4b0d3255bfef95601890afd80709");
+    }
+
+    @Test
+    void testList() throws Exception {
+        Files.createDirectories(tempDir.resolve("lib"));
+        Path jar = Files.write(tempDir.resolve("lib/a.jar"), new byte[1]);
+        Path war = Files.write(tempDir.resolve("b.WAR"), new byte[1]);
+        Files.write(tempDir.resolve("c.txt"), new byte[1]);
+        assertThat(FileChecksums.list(tempDir)).containsExactly(war, jar);
+        Path list = Files.writeString(tempDir.resolve("files.txt"), "# audit\n" + jar + "\n\n  " + war + "\n");
+        assertThat(FileChecksums.list(list)).containsExactly(jar, war);
+        assertThat(FileChecksums.read(new BufferedReader(new StringReader("x.jar\n")))).containsExactly(Path.of("x.jar"));
+    }
+}
@@ -0,0 +1,41 @@
+package com.github.kwart.mvnquery;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import org.apache.lucene.search.PrefixQuery;
+import org.apache.lucene.search.RegexpQuery;
+import org.apache.lucene.search.WildcardQuery;
+import org.apache.maven.index.MAVEN;
+import org.junit.jupiter.api.Test;
+
+class FilterPatternTest {
+
+    @Test
+    void testPatternQueries() {
+        assertThat(FilterPattern.toQuery(MAVEN.GROUP_ID, "org.apache.commons.*")).isInstanceOf(PrefixQuery.class)
+                .hasToString("g:org.apache.commons.*");
+        assertThat(FilterPattern.toQuery(MAVEN.ARTIFACT_ID, "*-spring-boot-starter")).isInstanceOf(PrefixQuery.class)
+                .hasToString("kw_ar:retrats-toob-gnirps-*");
+        assertThat(FilterPattern.toQuery(MAVEN.VERSION, "*-SNAPSHOT")).isInstanceOf(WildcardQuery.class)
+                .hasToString("v:*-SNAPSHOT");
+        assertThat(FilterPattern.toQuery(MAVEN.ARTIFACT_ID, "spring-*-starter")).isInstanceOf(WildcardQuery.class)
+                .hasToString("a:spring-*-starter");
+        assertThat(FilterPattern.toQuery(MAVEN.CLASSIFIER, "/linux-(x86_64|aarch_64)/")).isInstanceOf(RegexpQuery.class)
+                .hasToString("l:/linux-(x86_64|aarch_64)/");
+    }
+
+    @Test
+    void testExactValues() {
+        assertThat(FilterPattern.toQuery(MAVEN.GROUP_ID, "org.apache.commons")).isNull();
+        assertThat(FilterPattern.toQuery(MAVEN.EXTENSION, "ja*")).isNull();
+        assertThat(FilterPattern.isPattern("/")).isFalse();
+        assertThat(FilterPattern.isPattern("3.?")).isTrue();
+    }
+
+    @Test
+    void testInvalidRegex() {
+        assertThatThrownBy(() -> FilterPattern.check(Config.builder().withArtifactId("/hazelcast-(client/").build()))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,46 @@
+package com.github.kwart.mvnquery;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.maven.index.ArtifactInfo;
+import org.junit.jupiter.api.Test;
+
+class IngestFilterTest {
+
+    @Test
+    void testGroupIds() {
+        IngestFilter filter = IngestFilter.parse("org.foo, com.acme*,");
+        assertThat(filter).hasToString("com.acme*,org.foo");
+        assertThat(filter.acceptGroupId("org.foo")).isTrue();
+        assertThat(filter.acceptGroupId("org.foo.bar")).isTrue();
+        assertThat(filter.acceptGroupId("org.foobar")).isFalse();
+        assertThat(filter.acceptGroupId("org")).isFalse();
+        assertThat(filter.acceptGroupId("com.acmex")).isTrue();
+        assertThat(filter.acceptGroupId("com.acm")).isFalse();
+        assertThat(filter.acceptUinfo("org.foo|bar|1.0|NA|jar")).isTrue();
+        assertThat(filter.acceptUinfo("org.bar|foo|1.0|NA|jar")).isFalse();
+    }
+
+    @Test
+    void testDocuments() {
+        IngestFilter filter = IngestFilter.parse("org.foo");
+        Document doc = new Document();
+        assertThat(filter.accept(doc)).isTrue();
+        doc.add(new StringField(ArtifactInfo.UINFO, "org.bar|foo|1.0|NA|jar", Field.Store.YES));
+        assertThat(filter.accept(doc)).isFalse();
+    }
+
+    @Test
+    void testParse() {
+        assertThat(IngestFilter.parse(null)).isNull();
+        assertThat(IngestFilter.parse(" ")).isNull();
+        assertThat(IngestFilter.parse("org.foo,*")).isNull();
+        for (String value : new String[] { "org.*.foo", "org.", ".org", "/org\\\\.foo/", "org|foo" }) {
+            assertThatThrownBy(() -> IngestFilter.parse(value)).as(value).isInstanceOf(IllegalArgumentException.class);
+        }
+    }
+}
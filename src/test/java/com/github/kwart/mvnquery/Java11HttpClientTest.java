@@ -0,0 +1,252 @@
+package com.github.kwart.mvnquery;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import com.sun.net.httpserver.SimpleFileServer;
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class Java11HttpClientTest {
+
+    private static final int RANGE_SERVER_PORT = 5759;
+    private static final Pattern RANGE = Pattern.compile("bytes=(\\d+)-(\\d+)");
+    private static final String ETAG = "\"v1\"";
+    private static final String INDEX_GZ = "nexus-maven-repository-index.gz";
+
+    private final Path root = Path.of("src/test/resources/index").toAbsolutePath();
+    private final List<String> ranges = Collections.synchronizedList(new ArrayList<>());
+    private final Map<String, String> checksums = new ConcurrentHashMap<>();
+    private final Map<String, byte[]> resources = new ConcurrentHashMap<>();
+    private HttpServer rangeServer;
+
+    @BeforeAll
+    void startServer() throws IOException {
+        rangeServer = HttpServer.create(new InetSocketAddress(RANGE_SERVER_PORT), 0);
+        rangeServer.createContext("/.index/", this::handle);
+        rangeServer.start();
+    }
+
+    @AfterAll
+    void stopServer() {
+        rangeServer.stop(0);
+    }
+
+    @BeforeEach
+    void reset() {
+        ranges.clear();
+        checksums.clear();
+        resources.clear();
+    }
+
+    @Test
+    void testSegmentedDownload() throws Exception {
+        byte[] expected = Files.readAllBytes(root.resolve(INDEX_GZ));
+        Java11HttpClient client = new Java11HttpClient(3, 10_000, null, null);
+        assertThat(retrieve(client)).isEqualTo(expected);
+        assertThat(ranges).hasSize((expected.length + 9_999) / 10_000);
+        assertThat(client.getBytesDownloaded()).isEqualTo(expected.length);
+    }
+
+    @Test
+    void testResumeAndRevalidate(@TempDir Path cacheDir) throws Exception {
+        byte[] expected = Files.readAllBytes(root.resolve(INDEX_GZ));
+        checksums.put(INDEX_GZ + ".sha1", HexFormat.of().formatHex(MessageDigest.getInstance("SHA-1").digest(expected)));
+        // state left by an interrupted download with the first two segments complete
+        Files.write(cacheDir.resolve(INDEX_GZ + ".part"), Arrays.copyOf(expected, 20_000));
+        Files.writeString(cacheDir.resolve(INDEX_GZ + ".meta"), "etag=" + ETAG + "\nlength=" + expected.length
+                + "\nsegment-size=10000\nsegments=0,1\n");
+
+        Java11HttpClient client = new Java11HttpClient(3, 10_000, cacheDir, null);
+        assertThat(retrieve(client)).isEqualTo(expected);
+        assertThat(ranges).hasSize((expected.length + 9_999) / 10_000 - 2).doesNotContain("bytes=0-9999");
+        assertThat(client.getBytesDownloaded()).isEqualTo(expected.length - 20_000);
+        assertThat(cacheDir.resolve(INDEX_GZ + ".part")).doesNotExist();
+
+        ranges.clear();
+        client = new Java11HttpClient(3, 10_000, cacheDir, null);
+        assertThat(retrieve(client)).isEqualTo(expected);
+        assertThat(ranges).containsExactly("bytes=0-9999");
+        assertThat(client.getBytesDownloaded()).isZero();
+    }
+
+    @Test
+    void testChecksumMismatch(@TempDir Path cacheDir) throws Exception {
+        checksums.put(INDEX_GZ + ".sha1", "0000000000000000000000000000000000000000");
+        Java11HttpClient client = new Java11HttpClient(3, 10_000, cacheDir, null);
+        assertThatThrownBy(() -> retrieve(client)).isInstanceOf(IOException.class).hasMessageContaining("Checksum mismatch");
+        assertThat(cacheDir.resolve(INDEX_GZ)).doesNotExist();
+        assertThat(cacheDir.resolve(INDEX_GZ + ".part")).doesNotExist();
+    }
+
+    @Test
+    void testChunkPrefetch(@TempDir Path dir) throws Exception {
+        Files.writeString(dir.resolve(Java11HttpClient.INDEX_PROPERTIES), "nexus.index.incremental-0=4\n"
+                + "nexus.index.incremental-1=3\nnexus.index.incremental-2=2\nnexus.index.incremental-3=1\n");
+        for (int chunk = 1; chunk <= 4; chunk++) {
+            Files.writeString(dir.resolve(chunkName(chunk)), "chunk " + chunk);
+        }
+        Map<String, Integer> requests = new ConcurrentHashMap<>();
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        HttpHandler fileHandler = SimpleFileServer.createFileHandler(dir);
+        HttpServer server = HttpServer.create(new InetSocketAddress(0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/.index/", exchange -> {
+            String name = exchange.getRequestURI().getPath().substring("/.index/".length());
+            requests.merge(name, 1, Integer::sum);
+            if (!name.endsWith(".gz")) {
+                fileHandler.handle(exchange);
+                return;
+            }
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            try {
+                // slow chunk downloads, so the concurrent ones overlap
+                Thread.sleep(200);
+                fileHandler.handle(exchange);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                running.decrementAndGet();
+            }
+        });
+        server.start();
+        ExecutorService executor = (ExecutorService) server.getExecutor();
+        Java11HttpClient client = new Java11HttpClient(3, 10_000, null, null);
+        try {
+            client.connect("test", "http://localhost:" + server.getAddress().getPort() + "/.index");
+            try (InputStream is = client.retrieve(Java11HttpClient.INDEX_PROPERTIES)) {
+                is.readAllBytes();
+            }
+            for (int chunk = 1; chunk <= 4; chunk++) {
+                try (InputStream is = client.retrieve(chunkName(chunk))) {
+                    assertThat(new String(is.readAllBytes(), StandardCharsets.UTF_8)).isEqualTo("chunk " + chunk);
+                }
+            }
+        } finally {
+            client.disconnect();
+            server.stop(0);
+            executor.shutdownNow();
+        }
+        // the chunks following the requested one were downloaded concurrently and the prefetched files were used
+        assertThat(maxRunning.get()).isGreaterThan(1);
+        for (int chunk = 1; chunk <= 4; chunk++) {
+            assertThat(requests.get(chunkName(chunk))).as(chunkName(chunk)).isEqualTo(1);
+        }
+        assertThat(client.getChunksRetrieved()).isEqualTo(4);
+    }
+
+    @Test
+    void testPruneCache(@TempDir Path cacheDir) throws Exception {
+        resources.put(Java11HttpClient.INDEX_PROPERTIES,
+                "nexus.index.incremental-0=5\nnexus.index.incremental-1=4\n".getBytes(StandardCharsets.US_ASCII));
+        for (String name : List.of(INDEX_GZ, INDEX_GZ + ".meta", "nexus-maven-repository-index.3.gz",
+                "nexus-maven-repository-index.3.gz.meta", "nexus-maven-repository-index.2.gz.part",
+                "nexus-maven-repository-index.4.gz", "nexus-maven-repository-index.5.gz.part", "other.txt")) {
+            Files.writeString(cacheDir.resolve(name), name);
+        }
+        Java11HttpClient client = new Java11HttpClient(3, 10_000, null, null);
+        assertThat(client.pruneCache()).isZero();
+        client = new Java11HttpClient(3, 10_000, cacheDir, null);
+        // nothing is known about the remote chunks yet
+        assertThat(client.pruneCache()).isZero();
+        client.connect("test", "http://localhost:" + RANGE_SERVER_PORT + "/.index");
+        try (InputStream is = client.retrieve(Java11HttpClient.INDEX_PROPERTIES)) {
+            is.readAllBytes();
+        } finally {
+            client.disconnect();
+        }
+        assertThat(client.pruneCache()).isEqualTo(3);
+        try (Stream<Path> files = Files.list(cacheDir)) {
+            assertThat(files.map(file -> file.getFileName().toString())).containsExactlyInAnyOrder(INDEX_GZ,
+                    INDEX_GZ + ".meta", "nexus-maven-repository-index.4.gz", "nexus-maven-repository-index.5.gz.part",
+                    "other.txt", Java11HttpClient.INDEX_PROPERTIES, Java11HttpClient.INDEX_PROPERTIES + ".meta");
+        }
+    }
+
+    private byte[] retrieve(Java11HttpClient client) throws IOException {
+        client.connect("test", "http://localhost:" + RANGE_SERVER_PORT + "/.index");
+        try (InputStream is = client.retrieve(INDEX_GZ)) {
+            return is.readAllBytes();
+        } finally {
+            client.disconnect();
+        }
+    }
+
+    private static String chunkName(int chunk) {
+        return "nexus-maven-repository-index." + chunk + ".gz";
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String name = exchange.getRequestURI().getPath().substring("/.index/".length());
+            Path file = root.resolve(name);
+            byte[] data;
+            if (checksums.containsKey(name)) {
+                data = checksums.get(name).getBytes(StandardCharsets.US_ASCII);
+            } else if (resources.containsKey(name)) {
+                data = resources.get(name);
+            } else if (Files.isRegularFile(file)) {
+                data = Files.readAllBytes(file);
+            } else {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+            exchange.getResponseHeaders().set("ETag", ETAG);
+            String range = exchange.getRequestHeaders().getFirst("Range");
+            if (ETAG.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                ranges.add(range);
+                exchange.sendResponseHeaders(304, -1);
+                return;
+            }
+            String ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+            Matcher matcher = range == null ? null : RANGE.matcher(range);
+            if (matcher == null || !matcher.matches() || (ifRange != null && !ifRange.equals(ETAG))) {
+                exchange.sendResponseHeaders(200, data.length);
+                try (OutputStream os = exchange.getResponseBody()) {
+                    os.write(data);
+                }
+                return;
+            }
+            ranges.add(range);
+            int from = Integer.parseInt(matcher.group(1));
+            int to = Math.min(data.length - 1, Integer.parseInt(matcher.group(2)));
+            exchange.getResponseHeaders().set("Content-Range", "bytes " + from + "-" + to + "/" + data.length);
+            exchange.sendResponseHeaders(206, to - from + 1);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(data, from, to - from + 1);
+            }
+        }
+    }
+}
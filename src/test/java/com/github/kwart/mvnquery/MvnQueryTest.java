@@ -2,19 +2,33 @@ package com.github.kwart.mvnquery;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.PrintStream;
 import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.List;
+import java.util.Properties;
+import java.util.stream.Stream;
 
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.store.FSDirectory;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestInstance;
 import org.junit.jupiter.api.io.TempDir;
 
+import com.beust.jcommander.ParameterException;
 import com.github.kwart.mvnquery.Config.Builder;
 import com.sun.net.httpserver.HttpServer;
 import com.sun.net.httpserver.SimpleFileServer;
@@ -23,6 +37,7 @@ import com.sun.net.httpserver.SimpleFileServer;
 class MvnQueryTest {
 
     private static final int REPO_PORT = 5757;
+    private static final int QUERY_SERVER_PORT = 5758;
 
     @TempDir
     Path tempDir;
@@ -63,7 +78,8 @@ class MvnQueryTest {
             Path propertyFile = repoDir.resolve("index.properties");
             assertThat(propertyFile).isNotEmptyFile();
             String info = infoOS.toString(UTF_8);
-            assertThat(info).isNotNull().contains("Full update happened!", "+v:* +g:com.hazelcast +a:hazelcast +e:jar");
+            assertThat(info).isNotNull().contains("Full update happened!",
+                    "+FieldExistsQuery [field=dv_vk] +g:com.hazelcast +a:hazelcast +e:jar");
             String result = resultOS.toString(UTF_8);
             assertThat(result).contains("com.hazelcast:hazelcast:3.12.13:jar:");
             assertThat(result).doesNotContain("com.hazelcast:hazelcast-client:3.12.13:jar:");
@@ -95,4 +111,388 @@ class MvnQueryTest {
         }
     }
 
+    @Test
+    void testSortAndLimit(@TempDir Path dataDir) throws Exception {
+        Config config = Config.builder().withConfigDataDir(dataDir.toFile()).withConfigRepo("http://localhost:" + REPO_PORT)
+                .withLastDays(0).withGroupId("com.hazelcast").withClassifier("").withSort("ga").withLimit(2).withQuiet(true)
+                .build();
+        try (ByteArrayOutputStream resultOS = new ByteArrayOutputStream();
+                PrintStream resultPS = new PrintStream(resultOS, true, UTF_8.name())) {
+            new MvnQuery(config, resultPS, System.err).perform();
+            assertThat(resultOS.toString(UTF_8).lines()).containsExactly("com.hazelcast:hazelcast:3.12.13:jar:",
+                    "com.hazelcast:hazelcast-all:3.12.13:jar:");
+        }
+        assertThatThrownBy(() -> new MvnQuery(Config.builder().withSort("size").build()))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void testPatternFilters(@TempDir Path dataDir) throws Exception {
+        Builder config = Config.builder().withConfigDataDir(dataDir.toFile()).withConfigRepo("http://localhost:" + REPO_PORT)
+                .withLastDays(0).withClassifier("").withQuiet(true);
+        assertThat(query(config.withGroupId("com.hazel*").withArtifactId("*-client").build()))
+                .containsExactly("com.hazelcast:hazelcast-client:3.12.13:jar:");
+        assertThat(query(config.withGroupId("com.hazelcast").withArtifactId("/hazelcast-(spring|all)/")
+                .withArtifactVersion("3.12.*").build())).containsExactlyInAnyOrder(
+                        "com.hazelcast:hazelcast-spring:3.12.13:jar:", "com.hazelcast:hazelcast-all:3.12.13:jar:");
+        assertThat(query(config.withArtifactId("hazel?ast").withArtifactVersion("4.*").build())).isEmpty();
+    }
+
+    @Test
+    void testVersionRange(@TempDir Path dataDir) throws Exception {
+        Builder config = Config.builder().withConfigDataDir(dataDir.toFile()).withConfigRepo("http://localhost:" + REPO_PORT)
+                .withLastDays(0).withGroupId("com.hazelcast").withArtifactId("hazelcast").withPackaging("jar")
+                .withClassifier("").withQuiet(true);
+        assertThat(query(config.withVersionRange("[3.12,3.13)").build()))
+                .containsExactly("com.hazelcast:hazelcast:3.12.13:jar:");
+        assertThat(query(config.withVersionRange("(,3.12.13]").build())).hasSize(1);
+        assertThat(query(config.withVersionRange("3.12.13.0").build())).hasSize(1);
+        assertThat(query(config.withVersionRange("(,3.12.13),[4.0,)").build())).isEmpty();
+        assertThat(query(config.withVersionRange("[3.12.13-SNAPSHOT,3.12.13)").build())).isEmpty();
+    }
+
+    private static List<String> query(Config config) throws Exception {
+        try (ByteArrayOutputStream resultOS = new ByteArrayOutputStream();
+                PrintStream resultPS = new PrintStream(resultOS, true, UTF_8.name())) {
+            new MvnQuery(config, resultPS, System.err).perform();
+            return resultOS.toString(UTF_8).lines().toList();
+        }
+    }
+
+    @Test
+    void testLatest(@TempDir Path dataDir) throws Exception {
+        Config config = Config.builder().withConfigDataDir(dataDir.toFile()).withConfigRepo("http://localhost:" + REPO_PORT)
+                .withLastDays(0).withGroupId("com.hazelcast").withLatest(true).withQuiet(true).build();
+        try (ByteArrayOutputStream resultOS = new ByteArrayOutputStream();
+                PrintStream resultPS = new PrintStream(resultOS, true, UTF_8.name())) {
+            new MvnQuery(config, resultPS, System.err).perform();
+            // one row per GA, the artifact without classifier is preferred
+            assertThat(resultOS.toString(UTF_8).lines()).hasSize(5).allMatch(line -> line.endsWith(":3.12.13:jar:"))
+                    .contains("com.hazelcast:hazelcast:3.12.13:jar:", "com.hazelcast:hazelcast-client:3.12.13:jar:");
+        }
+    }
+
+    @Test
+    void testCountAndFacet(@TempDir Path dataDir) throws Exception {
+        Builder config = Config.builder().withConfigDataDir(dataDir.toFile()).withConfigRepo("http://localhost:" + REPO_PORT)
+                .withLastDays(0).withGroupId("com.hazelcast").withClassifier("").withQuiet(true);
+        assertThat(query(config.withCount(true).build())).containsExactly("5");
+        assertThat(query(config.withFacet("artifactId").build())).containsExactly("5", "hazelcast\t1", "hazelcast-all\t1",
+                "hazelcast-build-utils\t1", "hazelcast-client\t1", "hazelcast-spring\t1");
+        List<String> classifiers = query(config.withArtifactId("hazelcast").withPackaging("-").withClassifier("-")
+                .withCount(false).withFacet("classifier").build());
+        // the main artifact has no classifier
+        assertThat(classifiers).anyMatch(line -> line.startsWith("\t")).allMatch(line -> line.matches("[^\t]*\t[0-9]+"));
+        assertThatThrownBy(() -> new MvnQuery(config.withFacet("version").build()))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void testDistinct(@TempDir Path dataDir) throws Exception {
+        Builder config = Config.builder().withConfigDataDir(dataDir.toFile()).withConfigRepo("http://localhost:" + REPO_PORT)
+                .withLastDays(0).withQuiet(true);
+        assertThat(query(config.withGroupId("com.hazelcast").withDistinct("artifactId").build())).containsExactly(
+                "com.hazelcast:hazelcast", "com.hazelcast:hazelcast-all", "com.hazelcast:hazelcast-build-utils",
+                "com.hazelcast:hazelcast-client", "com.hazelcast:hazelcast-root", "com.hazelcast:hazelcast-spring");
+        assertThat(query(config.withArtifactId("hazelcast-c*").build())).containsExactly("com.hazelcast:hazelcast-client");
+        assertThat(query(config.withGroupId("com.hazel*").withArtifactId(null).withDistinct("groupId").build()))
+                .containsExactly("com.hazelcast");
+        assertThat(query(config.withGroupId("org.*").build())).isEmpty();
+        assertThatThrownBy(() -> new MvnQuery(config.withDistinct("version").build()))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new MvnQuery(config.withDistinct("groupId").withGroupId("*hazelcast").build()))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new MvnQuery(config.withGroupId("com.hazelcast").withClassifier("sources").build()))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new MvnQuery(config.withClassifier("-").withLastDays(7).build()))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void testIdentify(@TempDir Path dataDir) throws Exception {
+        Path jars = Files.createDirectories(dataDir.resolve("identify"));
+        Files.write(jars.resolve("unknown.jar"), new byte[] { 1, 2, 3 });
+        Files.write(jars.resolve("unknown.txt"), new byte[] { 1, 2, 3 });
+        Config config = Config.builder().withConfigDataDir(dataDir.toFile()).withConfigRepo("http://localhost:" + REPO_PORT)
+                .withIdentify(jars.toString()).build();
+        try (ByteArrayOutputStream infoOS = new ByteArrayOutputStream();
+                ByteArrayOutputStream resultOS = new ByteArrayOutputStream();
+                PrintStream infoPS = new PrintStream(infoOS, true, UTF_8.name());
+                PrintStream resultPS = new PrintStream(resultOS, true, UTF_8.name())) {
+            new MvnQuery(config, resultPS, infoPS).perform();
+            assertThat(resultOS.toString(UTF_8)).isEmpty();
+            assertThat(infoOS.toString(UTF_8)).contains("Not found: " + jars.resolve("unknown.jar"))
+                    .contains("Files identified: 0 of 1");
+        }
+        assertThatThrownBy(() -> new MvnQuery(Config.builder().withIdentify(jars.toString()).withDedup(true).build()))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void testClassSearch(@TempDir Path dataDir) throws Exception {
+        Builder config = Config.builder().withConfigDataDir(dataDir.toFile()).withConfigRepo("http://localhost:" + REPO_PORT)
+                .withLastDays(0).withClassifier("").withClassIndex(true).withQuiet(true);
+        assertThat(query(config.withClassName("com.hazelcast.core.HazelcastInstance").build())).containsExactlyInAnyOrder(
+                "com.hazelcast:hazelcast:3.12.13:jar:", "com.hazelcast:hazelcast-all:3.12.13:jar:");
+        assertThat(dataDir.resolve("crcaNi7JcZ").resolve("classes")).isDirectory();
+        // the class index is kept, the next queries don't need the option
+        config.withClassIndex(false).withSkipUpdate(true);
+        assertThat(query(config.withClassName("HazelcastInstance").build())).containsExactlyInAnyOrder(
+                "com.hazelcast:hazelcast:3.12.13:jar:", "com.hazelcast:hazelcast-all:3.12.13:jar:");
+        assertThat(query(config.withClassName("com.hazelcast.client.*").withArtifactId("hazelcast-client").build()))
+                .containsExactly("com.hazelcast:hazelcast-client:3.12.13:jar:");
+        assertThat(query(config.withClassName("NoSuchClass").withArtifactId(null).build())).isEmpty();
+        assertThatThrownBy(() -> new MvnQuery(config.withClassName("com.*.Foo").build()))
+                .isInstanceOf(IllegalArgumentException.class);
+        // the class filter can be used in the batch queries too
+        Path batchFile = dataDir.resolve("batch.txt");
+        Files.writeString(batchFile, String.join("\n", "--class HazelcastInstance --artifactId hazelcast",
+                "com.hazelcast:hazelcast-client"));
+        assertThat(query(config.withClassName(null).withBatch(batchFile.toString()).build())).containsExactlyInAnyOrder(
+                "1\tcom.hazelcast:hazelcast:3.12.13:jar:", "2\tcom.hazelcast:hazelcast-client:3.12.13:jar:");
+    }
+
+    @Test
+    void testIngestGroups(@TempDir Path dataDir) throws Exception {
+        Builder config = Config.builder().withConfigDataDir(dataDir.toFile()).withConfigRepo("http://localhost:" + REPO_PORT)
+                .withLastDays(0).withDistinct("groupId").withQuiet(true);
+        Path propertyFile = dataDir.resolve("crcaNi7JcZ").resolve("index.properties");
+        assertThat(query(config.withIngestGroups("org.apache, com.hazelcast.jet").build())).isEmpty();
+        assertThat(propertyFile).content().contains("ingest.groups=com.hazelcast.jet,org.apache");
+        // the stored filter is used by the next updates, a changed one triggers a full update
+        assertThat(query(config.withIngestGroups(null).withForceUpdate(true).build())).isEmpty();
+        assertThat(query(config.withIngestGroups("com.hazel*").withForceUpdate(false).build()))
+                .containsExactly("com.hazelcast");
+        assertThat(query(config.withIngestGroups("*").build())).containsExactly("com.hazelcast");
+        assertThat(propertyFile).content().doesNotContain("ingest.groups");
+        assertThatThrownBy(() -> new MvnQuery(config.withIngestGroups("com.*.foo").build()))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void testFormats(@TempDir Path dataDir) throws Exception {
+        Builder config = Config.builder().withConfigDataDir(dataDir.toFile()).withConfigRepo("http://localhost:" + REPO_PORT)
+                .withLastDays(0).withGroupId("com.hazelcast").withArtifactId("hazelcast").withClassifier("").withQuiet(true);
+        try (ByteArrayOutputStream resultOS = new ByteArrayOutputStream();
+                PrintStream resultPS = new PrintStream(resultOS, true, UTF_8.name())) {
+            new MvnQuery(config.withFormat("ndjson").build(), resultPS, System.err).perform();
+            assertThat(resultOS.toString(UTF_8).lines()).containsExactly(
+                    "{\"groupId\":\"com.hazelcast\",\"artifactId\":\"hazelcast\",\"version\":\"3.12.13\",\"extension\":\"jar\",\"classifier\":null}");
+        }
+        try (ByteArrayOutputStream resultOS = new ByteArrayOutputStream();
+                PrintStream resultPS = new PrintStream(resultOS, true, UTF_8.name())) {
+            new MvnQuery(config.withFormat("csv").build(), resultPS, System.err).perform();
+            assertThat(resultOS.toString(UTF_8).lines()).containsExactly("groupId,artifactId,version,extension,classifier",
+                    "com.hazelcast,hazelcast,3.12.13,jar,");
+        }
+        try (ByteArrayOutputStream resultOS = new ByteArrayOutputStream();
+                PrintStream resultPS = new PrintStream(resultOS, true, UTF_8.name())) {
+            new MvnQuery(config.withFormat("columnar").build(), resultPS, System.err).perform();
+            assertThat(resultOS.toByteArray()).startsWith("MVNQCOL1".getBytes(UTF_8));
+        }
+        assertThatThrownBy(() -> new MvnQuery(Config.builder().withFormat("xml").build()))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void testReadOnly(@TempDir Path dataDir) throws Exception {
+        Builder configBuilder = Config.builder().withConfigDataDir(dataDir.toFile())
+                .withConfigRepo("http://localhost:" + REPO_PORT).withLastDays(0).withGroupId("com.hazelcast")
+                .withArtifactId("hazelcast").withClassifier("").withQuiet(true);
+        MvnQuery writer = new MvnQuery(configBuilder.build());
+        // the writable index keeps the index locked, the read-only one must not need the lock
+        List<RepositoryIndex> writableIndexes = writer.prepareIndex();
+        try (ByteArrayOutputStream resultOS = new ByteArrayOutputStream();
+                PrintStream resultPS = new PrintStream(resultOS, true, UTF_8.name())) {
+            new MvnQuery(configBuilder.withReadOnly(true).build(), resultPS, System.err).perform();
+            assertThat(resultOS.toString(UTF_8).lines()).containsExactly("com.hazelcast:hazelcast:3.12.13:jar:");
+        } finally {
+            writer.closeIndexes(writableIndexes);
+        }
+        Config missingIndex = configBuilder.withConfigDataDir(dataDir.resolve("empty").toFile()).build();
+        assertThatThrownBy(() -> new MvnQuery(missingIndex).perform()).isInstanceOf(IOException.class)
+                .hasMessageContaining("No index found");
+    }
+
+    @Test
+    void testRefresh(@TempDir Path dataDir) throws Exception {
+        Builder configBuilder = Config.builder().withConfigDataDir(dataDir.toFile())
+                .withConfigRepo("http://localhost:" + REPO_PORT).withLastDays(0).withGroupId("com.hazelcast")
+                .withArtifactId("hazelcast").withClassifier("").withQuiet(true);
+        Path repoDir = dataDir.resolve("crcaNi7JcZ");
+        new MvnQuery(configBuilder.withRefresh(true).build()).perform();
+        assertThat(repoDir.resolve("index-1")).isDirectory();
+        assertThat(repoDir.resolve("index")).doesNotExist();
+        assertThat(repoDir.resolve("index.properties")).content().contains("index.generation=1");
+
+        MvnQuery mvnQuery = new MvnQuery(configBuilder.withRefresh(false).withSkipUpdate(true).build());
+        try (QueryServer server = mvnQuery.startServer(mvnQuery.prepareIndex())) {
+            new MvnQuery(configBuilder.withRefresh(true).build()).perform();
+            assertThat(repoDir.resolve("index.properties")).content().contains("index.generation=2");
+            // the previous generation is kept for the running queries
+            assertThat(repoDir.resolve("index-1")).isDirectory();
+
+            // the server switches to the refreshed index
+            Thread.sleep(1100L);
+            HttpClient client = HttpClient.newHttpClient();
+            URI queryUri = URI.create("http://127.0.0.1:" + server.getPort()
+                    + "/query?groupId=com.hazelcast&artifactId=hazelcast&lastDays=0&classifier=");
+            HttpResponse<String> response = client.send(HttpRequest.newBuilder(queryUri).build(),
+                    HttpResponse.BodyHandlers.ofString(UTF_8));
+            assertThat(response.body().lines()).containsExactly("com.hazelcast:hazelcast:3.12.13:jar:");
+
+            new MvnQuery(configBuilder.withRefresh(true).build()).perform();
+            assertThat(repoDir.resolve("index-1")).doesNotExist();
+            assertThat(repoDir.resolve("index-3")).isDirectory();
+        }
+    }
+
+    @Test
+    void testFullUpdateTuning(@TempDir Path dataDir) throws Exception {
+        Config config = Config.builder().withConfigDataDir(dataDir.toFile()).withConfigRepo("http://localhost:" + REPO_PORT)
+                .withLastDays(0).withGroupId("com.hazelcast").withClassifier("").withIndexThreads(2).withForceMerge(true)
+                .build();
+        try (ByteArrayOutputStream infoOS = new ByteArrayOutputStream();
+                ByteArrayOutputStream resultOS = new ByteArrayOutputStream();
+                PrintStream infoPS = new PrintStream(infoOS, true, UTF_8.name());
+                PrintStream resultPS = new PrintStream(resultOS, true, UTF_8.name())) {
+            new MvnQuery(config, resultPS, infoPS).perform();
+            assertThat(infoOS.toString(UTF_8)).contains("documents with 2 threads", "Index merged into a single segment");
+            assertThat(resultOS.toString(UTF_8).lines()).hasSize(5);
+        }
+        try (DirectoryReader reader = DirectoryReader.open(FSDirectory.open(dataDir.resolve("crcaNi7JcZ/index")))) {
+            assertThat(reader.leaves()).hasSize(1);
+        }
+    }
+
+    @Test
+    void testResultCache(@TempDir Path dataDir) throws Exception {
+        Config config = Config.builder().withConfigDataDir(dataDir.toFile()).withConfigRepo("http://localhost:" + REPO_PORT)
+                .withLastDays(0).withGroupId("com.hazelcast").withClassifier("").withSort("ga").withCacheSize(1).build();
+        String firstResult = null;
+        for (int i = 0; i < 2; i++) {
+            try (ByteArrayOutputStream infoOS = new ByteArrayOutputStream();
+                    ByteArrayOutputStream resultOS = new ByteArrayOutputStream();
+                    PrintStream infoPS = new PrintStream(infoOS, true, UTF_8.name());
+                    PrintStream resultPS = new PrintStream(resultOS, true, UTF_8.name())) {
+                new MvnQuery(config, resultPS, infoPS).perform();
+                if (firstResult == null) {
+                    firstResult = resultOS.toString(UTF_8);
+                    assertThat(firstResult).hasLineCount(5);
+                    assertThat(infoOS.toString(UTF_8)).doesNotContain("Result served from the cache");
+                } else {
+                    assertThat(resultOS.toString(UTF_8)).isEqualTo(firstResult);
+                    assertThat(infoOS.toString(UTF_8)).contains("Result served from the cache");
+                }
+            }
+        }
+        try (Stream<Path> entries = Files.list(dataDir.resolve("crcaNi7JcZ").resolve("query-cache"))) {
+            assertThat(entries).hasSize(1);
+        }
+    }
+
+    @Test
+    void testChanges(@TempDir Path dataDir) throws Exception {
+        Builder configBuilder = Config.builder().withConfigDataDir(dataDir.toFile())
+                .withConfigRepo("http://localhost:" + REPO_PORT).withGroupId("com.hazelcast").withClassifier("")
+                .withChanges("ci").withQuiet(true);
+        Path repoDir = dataDir.resolve("crcaNi7JcZ");
+        // the first run only stores the checkpoint
+        assertThat(query(configBuilder.build())).isEmpty();
+        assertThat(repoDir.resolve("index.properties")).content().contains("changes.checkpoint.ci=0");
+
+        // a chunk recorded by an incremental update (the test repository has no incremental chunks)
+        Files.createDirectories(repoDir.resolve("changes"));
+        Files.writeString(repoDir.resolve("changes/1.txt"), "com.hazelcast|hazelcast|3.12.13|NA|jar\n"
+                + "com.hazelcast|hazelcast|3.12.13|sources|jar\n");
+        Properties props = new Properties();
+        try (InputStream in = Files.newInputStream(repoDir.resolve("index.properties"))) {
+            props.load(in);
+        }
+        props.setProperty("changes.sequence", "1");
+        try (OutputStream out = Files.newOutputStream(repoDir.resolve("index.properties"))) {
+            props.store(out, null);
+        }
+        // the rows are selected by the checkpoint, not by --lastDays, and the other filters are applied
+        configBuilder.withSkipUpdate(true);
+        assertThat(query(configBuilder.build())).containsExactly("com.hazelcast:hazelcast:3.12.13:jar:");
+        assertThat(repoDir.resolve("index.properties")).content().contains("changes.checkpoint.ci=1");
+        assertThat(query(configBuilder.build())).isEmpty();
+
+        assertThatThrownBy(() -> new MvnQuery(configBuilder.withChanges("a b").build()))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new MvnQuery(configBuilder.withChanges("ci").withReadOnly(true).build()))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void testBatch(@TempDir Path dataDir) throws Exception {
+        Path batchFile = dataDir.resolve("batch.txt");
+        Files.writeString(batchFile, String.join("\n", "# dependencies", "com.hazelcast:hazelcast:3.12.13",
+                "com.hazelcast:hazelcast-client", "com.hazelcast:hazelcast-spring",
+                "--groupId com.hazelcast --artifactId hazelcast --classifier sources", "com.hazelcast:hazelcast"));
+        Config config = Config.builder().withConfigDataDir(dataDir.toFile()).withConfigRepo("http://localhost:" + REPO_PORT)
+                .withLastDays(0).withClassifier("").withBatch(batchFile.toString()).withQuiet(true).build();
+        try (ByteArrayOutputStream resultOS = new ByteArrayOutputStream();
+                PrintStream resultPS = new PrintStream(resultOS, true, UTF_8.name())) {
+            new MvnQuery(config, resultPS, System.err).perform();
+            assertThat(resultOS.toString(UTF_8).lines()).containsExactlyInAnyOrder("2\tcom.hazelcast:hazelcast:3.12.13:jar:",
+                    "3\tcom.hazelcast:hazelcast-client:3.12.13:jar:", "4\tcom.hazelcast:hazelcast-spring:3.12.13:jar:",
+                    "5\tcom.hazelcast:hazelcast:3.12.13:jar:sources", "6\tcom.hazelcast:hazelcast:3.12.13:jar:");
+        }
+        Files.writeString(batchFile, "com.hazelcast\n");
+        assertThatThrownBy(() -> new MvnQuery(config).perform()).isInstanceOf(ParameterException.class)
+                .hasMessageContaining("line 1");
+    }
+
+    @Test
+    void testMultipleRepositories(@TempDir Path dataDir) throws Exception {
+        String repo1 = "http://localhost:" + REPO_PORT;
+        String repo2 = "http://127.0.0.1:" + REPO_PORT;
+        Builder configBuilder = Config.builder().withConfigDataDir(dataDir.toFile()).withConfigRepo(repo1, repo2)
+                .withLastDays(0).withGroupId("com.hazelcast").withArtifactId("hazelcast").withClassifier("");
+        try (ByteArrayOutputStream infoOS = new ByteArrayOutputStream();
+                ByteArrayOutputStream resultOS = new ByteArrayOutputStream();
+                PrintStream infoPS = new PrintStream(infoOS, true, UTF_8.name());
+                PrintStream resultPS = new PrintStream(resultOS, true, UTF_8.name())) {
+            new MvnQuery(configBuilder.build(), resultPS, infoPS).perform();
+            assertThat(resultOS.toString(UTF_8)).hasLineCount(2).contains(repo1 + "\tcom.hazelcast:hazelcast:3.12.13:jar:",
+                    repo2 + "\tcom.hazelcast:hazelcast:3.12.13:jar:");
+            assertThat(infoOS.toString(UTF_8)).contains("Total response size: 2");
+        }
+        try (ByteArrayOutputStream resultOS = new ByteArrayOutputStream();
+                PrintStream resultPS = new PrintStream(resultOS, true, UTF_8.name())) {
+            new MvnQuery(configBuilder.withDedup(true).withQuiet(true).build(), resultPS, System.err).perform();
+            assertThat(resultOS.toString(UTF_8)).hasLineCount(1).contains("\tcom.hazelcast:hazelcast:3.12.13:jar:");
+        }
+    }
+
+    @Test
+    void testQueryServer(@TempDir Path dataDir) throws Exception {
+        Config config = Config.builder().withConfigDataDir(dataDir.toFile()).withConfigRepo("http://localhost:" + REPO_PORT)
+                .withServerPort(QUERY_SERVER_PORT).withQuiet(true).build();
+        MvnQuery mvnQuery = new MvnQuery(config);
+        try (QueryServer server = mvnQuery.startServer(mvnQuery.prepareIndex())) {
+            HttpClient client = HttpClient.newHttpClient();
+            String queryUrl = "http://127.0.0.1:" + server.getPort() + "/query?";
+            HttpResponse<String> response = client.send(
+                    HttpRequest.newBuilder(URI.create(queryUrl + "groupId=com.hazelcast&artifactId=hazelcast&lastDays=0&classifier="))
+                            .build(),
+                    HttpResponse.BodyHandlers.ofString(UTF_8));
+            assertThat(response.statusCode()).isEqualTo(200);
+            assertThat(response.body()).contains("com.hazelcast:hazelcast:3.12.13:jar:")
+                    .doesNotContain("com.hazelcast:hazelcast:3.12.13:jar:sources", "com.hazelcast:hazelcast-client:");
+
+            response = client.send(HttpRequest.newBuilder(URI.create(queryUrl + "config-repo=http://example.com")).build(),
+                    HttpResponse.BodyHandlers.ofString(UTF_8));
+            assertThat(response.statusCode()).isEqualTo(400);
+
+            response = client.send(HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + server.getPort() + "/metrics")).build(),
+                    HttpResponse.BodyHandlers.ofString(UTF_8));
+            assertThat(response.statusCode()).isEqualTo(200);
+            assertThat(response.body()).contains("mvnquery_search_seconds_count 1", "mvnquery_hit_decode_seconds_bucket",
+                    "mvnquery_server_requests_total 2");
+        }
+    }
+
 }
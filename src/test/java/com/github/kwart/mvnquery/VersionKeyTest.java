@@ -0,0 +1,25 @@
+package com.github.kwart.mvnquery;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+
+class VersionKeyTest {
+
+    @Test
+    void testMavenVersionOrder() {
+        String[] ordered = { "1.0-alpha-1", "1.0-alpha-2", "1.0a3", "1.0-beta", "1.0-M1", "1.0-rc1", "1.0-SNAPSHOT", "1.0",
+                "1.0-sp", "1.0-foo", "1.0.1", "1.1", "1.10", "2.0-alpha", "2.0", "10.0" };
+        for (int i = 0; i + 1 < ordered.length; i++) {
+            assertThat(VersionKey.of(ordered[i])).as(ordered[i] + " < " + ordered[i + 1])
+                    .isLessThan(VersionKey.of(ordered[i + 1]));
+        }
+    }
+
+    @Test
+    void testEquivalentVersions() {
+        assertThat(VersionKey.of("1.0.0")).isEqualTo(VersionKey.of("1"));
+        assertThat(VersionKey.of("1.0-final")).isEqualTo(VersionKey.of("1"));
+        assertThat(VersionKey.of("1.0-RC1")).isEqualTo(VersionKey.of("1.0.cr.1"));
+    }
+}
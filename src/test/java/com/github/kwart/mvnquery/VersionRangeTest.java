@@ -0,0 +1,38 @@
+package com.github.kwart.mvnquery;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TermRangeQuery;
+import org.junit.jupiter.api.Test;
+
+class VersionRangeTest {
+
+    @Test
+    void testRangeQueries() {
+        TermRangeQuery range = (TermRangeQuery) VersionRange.toQuery("[1.0,2.0)");
+        assertThat(range.getField()).isEqualTo("kw_vk");
+        assertThat(range.getLowerTerm()).isEqualTo(VersionKey.of("1.0"));
+        assertThat(range.getUpperTerm()).isEqualTo(VersionKey.of("2.0"));
+        assertThat(range.includesLower()).isTrue();
+        assertThat(range.includesUpper()).isFalse();
+
+        range = (TermRangeQuery) VersionRange.toQuery("(,1.5]");
+        assertThat(range.getLowerTerm()).isNull();
+        assertThat(range.getUpperTerm()).isEqualTo(VersionKey.of("1.5"));
+
+        assertThat(VersionRange.toQuery("[1.0.0]")).isInstanceOf(TermQuery.class)
+                .isEqualTo(VersionRange.toQuery("1"));
+        assertThat(((BooleanQuery) VersionRange.toQuery("(,1.0], [1.2,)")).clauses()).hasSize(2);
+    }
+
+    @Test
+    void testInvalidRanges() {
+        for (String spec : new String[] { "", "[1.0", "[1.0)", "[2.0,1.0]", "(1.0,1.0]", "[1,2,3]", "[1,2)x", "[1,2),",
+                "[1,2),3" }) {
+            assertThatThrownBy(() -> VersionRange.toQuery(spec)).as(spec).isInstanceOf(IllegalArgumentException.class);
+        }
+    }
+}